@@ -2,7 +2,9 @@ package uz.doc.test.adapter;
 
 import android.content.Context;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -13,6 +15,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import uz.doc.test.R;
 import uz.doc.test.model.Document;
 import uz.doc.test.utils.SharedPrefsHelper;
+import uz.doc.test.viewer.DocumentWarmup;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -65,6 +68,8 @@ public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.Docume
         private TextView tvFileTitle;
         private TextView tvFileType;
         private ImageView ivFavorite;
+        // Warm-up waiting for the touch to outlast the tap timeout
+        private Runnable pendingWarmup;
 
         public DocumentViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -88,10 +93,8 @@ public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.Docume
                 tvFileType.setText(context.getString(R.string.pptx_presentation));
             }
 
-            // Check if favorite
-            boolean isFavorite = prefsHelper.isFavorite(document.getId());
-            document.setFavorite(isFavorite);
-            updateFavoriteIcon(isFavorite);
+            // Favorite state comes from the prefs overlay; Document itself is immutable
+            updateFavoriteIcon(prefsHelper.isFavorite(document.getId()));
 
             // Click on document
             itemView.setOnClickListener(v -> {
@@ -100,10 +103,51 @@ public class DocumentAdapter extends RecyclerView.Adapter<DocumentAdapter.Docume
                 }
             });
 
+            // Start opening the document once a touch outlasts the tap timeout without
+            // turning into a scroll (or on focus), ahead of the click; a touch that
+            // scrolls the list before then costs nothing
+            if (pendingWarmup != null) {
+                itemView.removeCallbacks(pendingWarmup);
+                pendingWarmup = null;
+            }
+            itemView.setOnTouchListener((v, event) -> {
+                switch (event.getActionMasked()) {
+                    case MotionEvent.ACTION_DOWN:
+                        pendingWarmup = () -> {
+                            pendingWarmup = null;
+                            DocumentWarmup.warmUp(context, document);
+                        };
+                        v.postDelayed(pendingWarmup, ViewConfiguration.getTapTimeout());
+                        break;
+                    case MotionEvent.ACTION_UP:
+                        // A quick tap: the click follows, so start right away
+                        if (pendingWarmup != null) {
+                            v.removeCallbacks(pendingWarmup);
+                            pendingWarmup.run();
+                        }
+                        break;
+                    case MotionEvent.ACTION_CANCEL:
+                        if (pendingWarmup != null) {
+                            v.removeCallbacks(pendingWarmup);
+                            pendingWarmup = null;
+                        }
+                        DocumentWarmup.cancel(context, document);
+                        break;
+                }
+                return false;
+            });
+            // Focus moving on (D-pad, keyboard) abandons the warm-up like a scroll does
+            itemView.setOnFocusChangeListener((v, hasFocus) -> {
+                if (hasFocus) {
+                    DocumentWarmup.warmUp(context, document);
+                } else {
+                    DocumentWarmup.cancel(context, document);
+                }
+            });
+
             // Click on favorite
             ivFavorite.setOnClickListener(v -> {
-                boolean newFavoriteState = !document.isFavorite();
-                document.setFavorite(newFavoriteState);
+                boolean newFavoriteState = !prefsHelper.isFavorite(document.getId());
                 updateFavoriteIcon(newFavoriteState);
 
                 if (listener != null) {
@@ -0,0 +1,216 @@
+package uz.doc.test.manager;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies assets into internal storage for consumers that need a real file
+ * (sharing, compressed assets).
+ *
+ * Extracted files live in documents/<asset key>/<app stamp>/<file name>, where the
+ * asset key is the SHA-1 of the asset path (the scheme of document fingerprints),
+ * so equal names in different categories never collide and an app update never
+ * serves a stale copy. A fresh extraction deletes the copies earlier installs left
+ * for the asset, and files of the older flat and single-key layouts.
+ * Files are written to a temp file and renamed into place, and concurrent requests
+ * for the same asset share one copy.
+ */
+class AssetExtractor {
+    private static final String TAG = "AssetExtractor";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AssetManager assetManager;
+    private final File outputRoot;
+    private final long appStamp;
+    private final ConcurrentHashMap<String, FutureTask<File>> inFlight = new ConcurrentHashMap<>();
+    // Older layouts are swept once per process, after the first fresh extraction
+    private final AtomicBoolean oldLayoutsSwept = new AtomicBoolean();
+
+    AssetExtractor(AssetManager assetManager, File outputRoot, long appStamp) {
+        this.assetManager = assetManager;
+        this.outputRoot = outputRoot;
+        this.appStamp = appStamp;
+    }
+
+    /**
+     * Extract the asset (or reuse a previous extraction). Blocks until the file is ready.
+     * Returns null on failure.
+     */
+    File extract(String assetPath) {
+        long length = assetLength(assetPath);
+        String fileName = assetPath.substring(assetPath.lastIndexOf("/") + 1);
+        File assetDir = new File(outputRoot, FileManager.sha1Hex(assetPath));
+        File outputFile = new File(new File(assetDir, Long.toHexString(appStamp)), fileName);
+
+        // Fast path: a completed extraction is always complete, thanks to the atomic rename
+        if (isComplete(outputFile, length)) {
+            return outputFile;
+        }
+
+        String key = outputFile.getAbsolutePath();
+        FutureTask<File> task = new FutureTask<>(() -> copy(assetPath, outputFile, length));
+        FutureTask<File> existing = inFlight.putIfAbsent(key, task);
+        boolean extracted = existing == null;
+        if (extracted) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            task = existing;
+        }
+
+        try {
+            File file = task.get();
+            if (extracted) {
+                removeStale(assetDir, file.getParentFile());
+            }
+            return file;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error copying asset to internal storage", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private File copy(String assetPath, File outputFile, long length) throws IOException {
+        // Another caller may have finished between our fast-path check and getting here
+        if (isComplete(outputFile, length)) {
+            return outputFile;
+        }
+
+        File dir = outputFile.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        File tmp = new File(dir, outputFile.getName() + ".part");
+        try {
+            if (length >= 0) {
+                copyRegion(assetPath, tmp, length);
+            } else {
+                copyStream(assetPath, tmp);
+            }
+            if (!tmp.renameTo(outputFile)) {
+                throw new IOException("Cannot rename " + tmp + " to " + outputFile);
+            }
+        } finally {
+            tmp.delete();
+        }
+
+        Log.d(TAG, "File copied successfully: " + outputFile.getAbsolutePath());
+        return outputFile;
+    }
+
+    /**
+     * Uncompressed asset: let the kernel move the bytes straight from the APK.
+     */
+    private void copyRegion(String assetPath, File target, long length) throws IOException {
+        try (AssetFileDescriptor assetFd = assetManager.openFd(assetPath);
+             FileInputStream in = new FileInputStream(assetFd.getFileDescriptor());
+             FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel source = in.getChannel();
+            FileChannel destination = out.getChannel();
+            source.position(assetFd.getStartOffset());
+            long copied = 0;
+            while (copied < length) {
+                long n = destination.transferFrom(source, copied, length - copied);
+                if (n <= 0) throw new IOException("Unexpected end of asset " + assetPath);
+                copied += n;
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Compressed asset: inflate through AssetManager with a large buffer.
+     */
+    private void copyStream(String assetPath, File target) throws IOException {
+        try (InputStream in = assetManager.open(assetPath);
+             FileOutputStream out = new FileOutputStream(target)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * Size of an uncompressed asset, or -1 when it is compressed (size unknown without inflating).
+     */
+    private long assetLength(String assetPath) {
+        try (AssetFileDescriptor assetFd = assetManager.openFd(assetPath)) {
+            return assetFd.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isComplete(File file, long expectedLength) {
+        return file.isFile() && (expectedLength < 0 || file.length() == expectedLength);
+    }
+
+    /**
+     * Delete the other versions of the asset and, once, entries of the older layouts:
+     * documents/<file name> and documents/<key>/<file name>. Directories of the
+     * current layout only hold directories, so in-flight extractions are safe.
+     */
+    private void removeStale(File assetDir, File currentVersion) {
+        File[] versions = assetDir.listFiles();
+        if (versions != null) {
+            for (File version : versions) {
+                if (!version.equals(currentVersion)) {
+                    deleteRecursively(version);
+                }
+            }
+        }
+
+        if (!oldLayoutsSwept.compareAndSet(false, true)) return;
+        File[] entries = outputRoot.listFiles();
+        if (entries == null) return;
+        for (File entry : entries) {
+            if (entry.isFile() || containsFile(entry)) {
+                Log.d(TAG, "Removing old extraction " + entry.getName());
+                deleteRecursively(entry);
+            }
+        }
+    }
+
+    private static boolean containsFile(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) return false;
+        for (File child : children) {
+            if (child.isFile()) return true;
+        }
+        return false;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Cannot delete " + file);
+        }
+    }
+}
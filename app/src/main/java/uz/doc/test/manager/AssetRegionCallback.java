@@ -0,0 +1,66 @@
+package uz.doc.test.manager;
+
+import android.content.res.AssetFileDescriptor;
+import android.os.ProxyFileDescriptorCallback;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Serves reads of a proxy file descriptor straight from an uncompressed asset's
+ * region inside the APK. PdfRenderer always reads its descriptor from offset 0,
+ * so the raw AssetFileDescriptor (which points into the middle of the APK) can't
+ * be handed to it directly; this callback re-bases every read onto the asset.
+ */
+class AssetRegionCallback extends ProxyFileDescriptorCallback {
+    private static final String TAG = "AssetRegionCallback";
+
+    private final AssetFileDescriptor assetFd;
+    private final FileInputStream stream;
+    private final FileChannel channel;
+
+    AssetRegionCallback(AssetFileDescriptor assetFd) {
+        this.assetFd = assetFd;
+        this.stream = new FileInputStream(assetFd.getFileDescriptor());
+        this.channel = stream.getChannel();
+    }
+
+    @Override
+    public long onGetSize() {
+        return assetFd.getLength();
+    }
+
+    @Override
+    public int onRead(long offset, int size, byte[] data) throws ErrnoException {
+        long remaining = assetFd.getLength() - offset;
+        if (remaining <= 0) return 0;
+
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, (int) Math.min(size, remaining));
+        long position = assetFd.getStartOffset() + offset;
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) break;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading asset region", e);
+            throw new ErrnoException("onRead", OsConstants.EIO);
+        }
+        return buffer.position();
+    }
+
+    @Override
+    public void onRelease() {
+        try {
+            stream.close();
+            assetFd.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close asset descriptor", e);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package uz.doc.test.manager;
+
+import android.util.Log;
+
+import uz.doc.test.model.Document;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent binary index of the document catalog (assets + user files).
+ *
+ * Layout (big endian):
+ * magic, format version, app stamp, category count, then per category:
+ * id, document count and the documents themselves.
+ * The file is read through a memory-mapped buffer and written atomically
+ * (temp file + rename), so a crash never leaves a half-written index behind.
+ */
+class CatalogIndex {
+    private static final String TAG = "CatalogIndex";
+    private static final String FILE_NAME = "catalog.idx";
+    private static final int MAGIC = 0x55444349; // "UDCI"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+
+    CatalogIndex(File directory) {
+        this.file = new File(directory, FILE_NAME);
+    }
+
+    /**
+     * Read the index. Returns null when it is missing, corrupt or was built
+     * by a different app install (stamp mismatch), so the caller rebuilds it.
+     */
+    CatalogSnapshot read(long appStamp) {
+        if (!file.exists()) return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) return null;
+            if (buffer.getLong() != appStamp) return null;
+
+            int categoryCount = buffer.getInt();
+            Map<String, Document[]> categories = new LinkedHashMap<>();
+            for (int c = 0; c < categoryCount; c++) {
+                String categoryId = readString(buffer);
+                Document[] documents = new Document[buffer.getInt()];
+                for (int d = 0; d < documents.length; d++) {
+                    documents[d] = readDocument(buffer, categoryId);
+                }
+                categories.put(categoryId, documents);
+            }
+            return new CatalogSnapshot(categories);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            Log.w(TAG, "Catalog index unreadable, rebuilding", e);
+            return null;
+        }
+    }
+
+    /**
+     * Write the whole catalog. Called after the first build and after every upload/delete.
+     */
+    void write(long appStamp, CatalogSnapshot snapshot) {
+        Map<String, Document[]> catalog = snapshot.getCategories();
+        ByteBuffer buffer = ByteBuffer.allocate(estimateSize(catalog));
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putLong(appStamp);
+        buffer.putInt(catalog.size());
+        for (Map.Entry<String, Document[]> entry : catalog.entrySet()) {
+            writeString(buffer, entry.getKey());
+            buffer.putInt(entry.getValue().length);
+            for (Document doc : entry.getValue()) {
+                writeDocument(buffer, doc);
+            }
+        }
+        buffer.flip();
+
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.getChannel().write(buffer);
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing catalog index", e);
+            tmp.delete();
+            return;
+        }
+
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Error replacing catalog index");
+            tmp.delete();
+        }
+    }
+
+    private static Document readDocument(ByteBuffer buffer, String categoryId) {
+        String id = readString(buffer);
+        String title = readString(buffer);
+        String filePath = readString(buffer);
+        Document.DocumentType type = Document.DocumentType.values()[buffer.get()];
+        boolean fromAssets = buffer.get() != 0;
+        long fileSize = buffer.getLong();
+        long lastModified = buffer.getLong();
+        return new Document(id, title, filePath, categoryId, type, fromAssets, fileSize, lastModified);
+    }
+
+    private static void writeDocument(ByteBuffer buffer, Document doc) {
+        writeString(buffer, doc.getId());
+        writeString(buffer, doc.getTitle());
+        writeString(buffer, doc.getFilePath());
+        buffer.put((byte) doc.getType().ordinal());
+        buffer.put((byte) (doc.isFromAssets() ? 1 : 0));
+        buffer.putLong(doc.getFileSize());
+        buffer.putLong(doc.getLastModified());
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static int estimateSize(Map<String, Document[]> catalog) {
+        int size = 20;
+        for (Map.Entry<String, Document[]> entry : catalog.entrySet()) {
+            size += 8 + utf8Length(entry.getKey());
+            for (Document doc : entry.getValue()) {
+                size += 12 + utf8Length(doc.getId())
+                        + utf8Length(doc.getTitle())
+                        + utf8Length(doc.getFilePath())
+                        + 2 + 16;
+            }
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
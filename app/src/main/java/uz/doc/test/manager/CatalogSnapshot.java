@@ -0,0 +1,68 @@
+package uz.doc.test.manager;
+
+import uz.doc.test.model.Document;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the whole catalog: per-category document arrays plus
+ * id/path lookup indexes. A new snapshot is built for every change and
+ * published atomically, so readers never lock and never see a half-applied update.
+ */
+final class CatalogSnapshot {
+    private static final Document[] EMPTY = new Document[0];
+
+    private final Map<String, Document[]> categories;
+    private final Map<String, Document> documentsById;
+    private final Map<String, Document> documentsByPath;
+
+    /**
+     * @param categories category id -> documents sorted by title; arrays must not be modified afterwards
+     */
+    CatalogSnapshot(Map<String, Document[]> categories) {
+        Map<String, Document> byId = new HashMap<>();
+        Map<String, Document> byPath = new HashMap<>();
+        for (Document[] documents : categories.values()) {
+            for (Document doc : documents) {
+                byId.put(doc.getId(), doc);
+                byPath.put(doc.getFilePath(), doc);
+            }
+        }
+        this.categories = Collections.unmodifiableMap(new LinkedHashMap<>(categories));
+        this.documentsById = byId;
+        this.documentsByPath = byPath;
+    }
+
+    boolean hasCategory(String categoryId) {
+        return categories.containsKey(categoryId);
+    }
+
+    Document[] getCategory(String categoryId) {
+        Document[] documents = categories.get(categoryId);
+        return documents != null ? documents : EMPTY;
+    }
+
+    Map<String, Document[]> getCategories() {
+        return categories;
+    }
+
+    Document getById(String documentId) {
+        return documentsById.get(documentId);
+    }
+
+    Document getByPath(String filePath) {
+        return documentsByPath.get(filePath);
+    }
+
+    /**
+     * Copy-on-write: a new snapshot sharing every category array except the replaced one.
+     */
+    CatalogSnapshot withCategory(String categoryId, Document[] documents) {
+        Map<String, Document[]> copy = new LinkedHashMap<>(categories);
+        copy.put(categoryId, documents);
+        return new CatalogSnapshot(copy);
+    }
+}
@@ -1,36 +1,73 @@
 package uz.doc.test.manager;
 
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.storage.StorageManager;
 import android.util.Log;
 
 import uz.doc.test.model.Document;
 import uz.doc.test.utils.Constants;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class FileManager {
     private static final String TAG = "FileManager";
+    private static final String USER_FILES_DIR = "user_files";
+    private static final String[] CATEGORY_IDS = {
+            Constants.CATEGORY_MARUZALAR,
+            Constants.CATEGORY_ADABIYOTLAR,
+            Constants.CATEGORY_LABARATORIYA,
+            Constants.CATEGORY_AMALIY_MASHGULOT,
+            Constants.CATEGORY_MASALALAR,
+            Constants.CATEGORY_SILLABUS
+    };
+    private static final Comparator<Document> TITLE_ORDER =
+            (d1, d2) -> d1.getTitle().compareToIgnoreCase(d2.getTitle());
+    private static final Comparator<Document> CATALOG_ORDER =
+            Comparator.comparingInt((Document d) -> categoryRank(d.getCategoryId())).thenComparing(TITLE_ORDER);
+
     private static FileManager instance;
     private Context context;
     private AssetManager assetManager;
-    // Cache asset documents per category (helps search performance)
-    private Map<String, List<Document>> categoryCache;
+    private final CatalogIndex catalogIndex;
+    private final long appStamp;
+    private final AssetExtractor assetExtractor;
+    // Serializes index writes so the file on disk always matches the latest catalog
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+    private HandlerThread proxyThread;
+    // Catalog (assets + user files) with id/path indexes; replaced as a whole on every change.
+    // Writers hold the FileManager lock, readers just read the volatile reference.
+    private volatile CatalogSnapshot snapshot;
 
     private FileManager(Context context) {
         this.context = context.getApplicationContext();
         this.assetManager = context.getAssets();
-        this.categoryCache = new HashMap<>();
+        this.catalogIndex = new CatalogIndex(this.context.getFilesDir());
+        this.appStamp = readAppStamp();
+        this.assetExtractor = new AssetExtractor(assetManager,
+                new File(this.context.getFilesDir(), "documents"), appStamp);
     }
 
     public static synchronized FileManager getInstance(Context context) {
@@ -42,56 +79,145 @@ public class FileManager {
 
     /**
      * Get all documents from a specific category folder
-     * Includes both asset files and user-uploaded files
+     * Includes both asset files and user-uploaded files.
+     * The returned list is a read-only view over the shared catalog (no copying).
      */
     public List<Document> getDocumentsFromCategory(String categoryId) {
+        if (categoryId == null) return Collections.emptyList();
+
+        CatalogSnapshot current = getSnapshot();
+        if (!current.hasCategory(categoryId)) {
+            // Category outside of the known set - scan it once and keep it in the index
+            current = rescanCategory(categoryId);
+        }
+        return Collections.unmodifiableList(Arrays.asList(current.getCategory(categoryId)));
+    }
+
+    /**
+     * Register a file that was just copied into user_files/<categoryId>
+     * without rescanning the category.
+     */
+    public void onUserFileAdded(String categoryId, File file) {
+        Document doc = createUserDocument(categoryId, file);
+        if (doc == null) return;
+
+        synchronized (this) {
+            CatalogSnapshot current = getSnapshot();
+            List<Document> documents = new ArrayList<>(Arrays.asList(current.getCategory(categoryId)));
+            removeByPath(documents, doc.getFilePath());
+            int index = 0;
+            while (index < documents.size()
+                    && TITLE_ORDER.compare(documents.get(index), doc) <= 0) {
+                index++;
+            }
+            documents.add(index, doc);
+            publish(current.withCategory(categoryId, documents.toArray(new Document[0])));
+        }
+    }
+
+    /**
+     * Drop the cached documents of a category and rescan it (assets + user files).
+     * Use when user_files/<categoryId> changed in a way the catalog was not told about.
+     */
+    public void invalidateCategory(String categoryId) {
+        rescanCategory(categoryId);
+    }
+
+    private synchronized CatalogSnapshot rescanCategory(String categoryId) {
+        CatalogSnapshot updated = getSnapshot().withCategory(categoryId, scanCategory(categoryId));
+        publish(updated);
+        return updated;
+    }
+
+    /**
+     * Directory where user-uploaded files of a category are stored
+     */
+    public File getUserCategoryDir(String categoryId) {
+        return new File(context.getFilesDir(), USER_FILES_DIR + "/" + categoryId);
+    }
+
+    /**
+     * Current catalog snapshot. Lock-free once loaded; the first call loads it from
+     * the persistent index, building it on first launch or after an app update.
+     */
+    private CatalogSnapshot getSnapshot() {
+        CatalogSnapshot current = snapshot;
+        if (current != null) return current;
+
+        synchronized (this) {
+            if (snapshot == null) {
+                CatalogSnapshot loaded = catalogIndex.read(appStamp);
+                if (loaded == null) {
+                    Map<String, Document[]> categories = new LinkedHashMap<>();
+                    for (String categoryId : CATEGORY_IDS) {
+                        categories.put(categoryId, scanCategory(categoryId));
+                    }
+                    loaded = new CatalogSnapshot(categories);
+                    publish(loaded);
+                    Log.d(TAG, "Catalog index rebuilt");
+                }
+                snapshot = loaded;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Make a new snapshot visible to readers and persist it in the background.
+     * Caller must hold the FileManager lock so concurrent writers don't lose updates.
+     */
+    private void publish(CatalogSnapshot updated) {
+        snapshot = updated;
+        indexExecutor.execute(() -> catalogIndex.write(appStamp, updated));
+    }
+
+    private Document[] scanCategory(String categoryId) {
         List<Document> documents = new ArrayList<>();
 
-        // 1. Load files from assets (cached)
+        // 1. Load files from assets
         documents.addAll(getAssetDocumentsFromCategory(categoryId));
 
         // 2. Load user-uploaded files
-        File userCategoryDir = new File(context.getFilesDir(), "user_files/" + categoryId);
+        File userCategoryDir = getUserCategoryDir(categoryId);
         if (userCategoryDir.exists() && userCategoryDir.isDirectory()) {
             File[] userFiles = userCategoryDir.listFiles();
             if (userFiles != null) {
                 for (File file : userFiles) {
-                    if (file.isFile()) {
-                        String fileName = file.getName();
-                        Document.DocumentType type = getDocumentType(fileName);
-
-                        if (type != null) {
-                            Document doc = new Document();
-                            String filePath = file.getAbsolutePath();
-                            doc.setId(generateStableId(filePath));
-                            doc.setTitle(getFileNameWithoutExtension(fileName));
-                            doc.setFilePath(filePath);
-                            doc.setCategoryId(categoryId);
-                            doc.setType(type);
-                            doc.setFromAssets(false);  // Mark as user file
-                            doc.setFileSize(file.length());
-
-                            documents.add(doc);
-                        }
+                    Document doc = createUserDocument(categoryId, file);
+                    if (doc != null) {
+                        documents.add(doc);
                     }
                 }
             }
         }
 
         // Sort by title
-        documents.sort((d1, d2) -> d1.getTitle().compareToIgnoreCase(d2.getTitle()));
+        documents.sort(TITLE_ORDER);
 
-        return documents;
+        return documents.toArray(new Document[0]);
     }
 
-    private List<Document> getAssetDocumentsFromCategory(String categoryId) {
-        if (categoryId == null) return new ArrayList<>();
-
-        List<Document> cached = categoryCache.get(categoryId);
-        if (cached != null) {
-            return cloneDocuments(cached);
-        }
+    private Document createUserDocument(String categoryId, File file) {
+        if (!file.isFile()) return null;
+
+        String fileName = file.getName();
+        Document.DocumentType type = getDocumentType(fileName);
+        if (type == null) return null;
+
+        String filePath = file.getAbsolutePath();
+        return new Document(
+                generateStableId(filePath),
+                getFileNameWithoutExtension(fileName),
+                filePath,
+                categoryId,
+                type,
+                false,  // Mark as user file
+                file.length(),
+                file.lastModified()
+        );
+    }
 
+    private List<Document> getAssetDocumentsFromCategory(String categoryId) {
         List<Document> assetDocs = new ArrayList<>();
         String folderPath = Constants.assetCategoryPath(categoryId);
         try {
@@ -104,47 +230,52 @@ public class FileManager {
                     Document.DocumentType type = getDocumentType(fileName);
                     if (type == null) continue;
 
-                    Document doc = new Document();
                     String filePath = folderPath + "/" + fileName;
-                    doc.setId(generateStableId(filePath));
-                    doc.setTitle(getFileNameWithoutExtension(fileName));
-                    doc.setFilePath(filePath);
-                    doc.setCategoryId(categoryId);
-                    doc.setType(type);
-                    doc.setFromAssets(true);
-                    assetDocs.add(doc);
+                    assetDocs.add(new Document(
+                            generateStableId(filePath),
+                            getFileNameWithoutExtension(fileName),
+                            filePath,
+                            categoryId,
+                            type
+                    ));
                 }
             }
         } catch (IOException e) {
             Log.e(TAG, "Error reading files from category: " + categoryId, e);
         }
 
-        categoryCache.put(categoryId, assetDocs);
-        return cloneDocuments(assetDocs);
+        return assetDocs;
     }
 
-    private List<Document> cloneDocuments(List<Document> docs) {
-        List<Document> copies = new ArrayList<>();
-        if (docs == null) return copies;
-        for (Document d : docs) {
-            copies.add(cloneDocument(d));
+    private static boolean removeByPath(List<Document> documents, String filePath) {
+        for (int i = 0; i < documents.size(); i++) {
+            if (documents.get(i).getFilePath().equals(filePath)) {
+                documents.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int categoryRank(String categoryId) {
+        for (int i = 0; i < CATEGORY_IDS.length; i++) {
+            if (CATEGORY_IDS[i].equals(categoryId)) return i;
         }
-        return copies;
+        return CATEGORY_IDS.length;
     }
 
-    private Document cloneDocument(Document d) {
-        if (d == null) return null;
-        Document copy = new Document();
-        copy.setId(d.getId());
-        copy.setTitle(d.getTitle());
-        copy.setFilePath(d.getFilePath());
-        copy.setCategoryId(d.getCategoryId());
-        copy.setType(d.getType());
-        copy.setFileSize(d.getFileSize());
-        copy.setLastModified(d.getLastModified());
-        copy.setFavorite(d.isFavorite());
-        copy.setFromAssets(d.isFromAssets());
-        return copy;
+    /**
+     * Stamp of the installed APK; changes on every app update so the
+     * catalog index is rebuilt when the bundled assets may have changed.
+     */
+    private long readAppStamp() {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Package info unavailable", e);
+            return 0;
+        }
     }
 
     /**
@@ -153,16 +284,7 @@ public class FileManager {
     public List<Document> getAllDocuments() {
         List<Document> allDocuments = new ArrayList<>();
 
-        String[] categories = {
-                Constants.CATEGORY_MARUZALAR,
-                Constants.CATEGORY_ADABIYOTLAR,
-                Constants.CATEGORY_LABARATORIYA,
-                Constants.CATEGORY_AMALIY_MASHGULOT,
-                Constants.CATEGORY_MASALALAR,
-                Constants.CATEGORY_SILLABUS
-        };
-
-        for (String categoryId : categories) {
+        for (String categoryId : CATEGORY_IDS) {
             allDocuments.addAll(getDocumentsFromCategory(categoryId));
         }
 
@@ -173,14 +295,17 @@ public class FileManager {
      * Search documents by title
      */
     public List<Document> searchDocuments(String query) {
-        List<Document> allDocs = getAllDocuments();
         List<Document> results = new ArrayList<>();
 
         String lowerQuery = query.toLowerCase().trim();
 
-        for (Document doc : allDocs) {
-            if (doc.getTitle().toLowerCase().contains(lowerQuery)) {
-                results.add(doc);
+        // Walk the shared snapshot directly instead of materializing getAllDocuments()
+        CatalogSnapshot current = getSnapshot();
+        for (String categoryId : CATEGORY_IDS) {
+            for (Document doc : current.getCategory(categoryId)) {
+                if (doc.getTitle().toLowerCase().contains(lowerQuery)) {
+                    results.add(doc);
+                }
             }
         }
 
@@ -191,30 +316,25 @@ public class FileManager {
      * Get document by its ID (searches all categories)
      */
     public Document getDocumentById(String documentId) {
-        List<Document> allDocs = getAllDocuments();
-
-        for (Document doc : allDocs) {
-            if (doc.getId().equals(documentId)) {
-                return doc;
-            }
-        }
-
-        return null;
+        return getSnapshot().getById(documentId);
     }
 
     /**
-     * Get multiple documents by their IDs
+     * Get multiple documents by their IDs, in catalog order.
+     * Resolved with one hash lookup per id.
      */
-    public List<Document> getDocumentsByIds(Set<String> documentIds) {
+    public List<Document> getDocumentsByIds(Collection<String> documentIds) {
+        CatalogSnapshot current = getSnapshot();
         List<Document> documents = new ArrayList<>();
-        List<Document> allDocs = getAllDocuments();
 
-        for (Document doc : allDocs) {
-            if (documentIds.contains(doc.getId())) {
+        for (String id : documentIds) {
+            Document doc = current.getById(id);
+            if (doc != null) {
                 documents.add(doc);
             }
         }
 
+        documents.sort(CATALOG_ORDER);
         return documents;
     }
 
@@ -222,25 +342,19 @@ public class FileManager {
      * Get document by file path
      */
     public Document getDocumentByPath(String filePath) {
-        List<Document> allDocs = getAllDocuments();
-
-        for (Document doc : allDocs) {
-            if (doc.getFilePath().equals(filePath)) {
-                return doc;
-            }
-        }
-
-        return null;
+        return getSnapshot().getByPath(filePath);
     }
 
     /**
-     * Get multiple documents by their file paths
+     * Get multiple documents by their file paths, keeping the order of the given paths.
+     * Resolved with one hash lookup per path.
      */
     public List<Document> getDocumentsByPaths(List<String> filePaths) {
+        CatalogSnapshot current = getSnapshot();
         List<Document> documents = new ArrayList<>();
 
         for (String path : filePaths) {
-            Document doc = getDocumentByPath(path);
+            Document doc = current.getByPath(path);
             if (doc != null) {
                 documents.add(doc);
             }
@@ -250,46 +364,54 @@ public class FileManager {
     }
 
     /**
-     * Copy file from assets to internal storage (for offline access)
+     * Copy file from assets to internal storage (for offline access).
+     * Safe to call concurrently; repeated calls reuse the extracted file.
      */
     public File copyAssetToInternalStorage(String assetPath) {
-        try {
-            String fileName = assetPath.substring(assetPath.lastIndexOf("/") + 1);
-            File outputDir = new File(context.getFilesDir(), "documents");
-
-            if (!outputDir.exists()) {
-                outputDir.mkdirs();
-            }
-
-            File outputFile = new File(outputDir, fileName);
-
-            // If file already exists, return it
-            if (outputFile.exists()) {
-                return outputFile;
-            }
-
-            // Copy from assets to internal storage
-            InputStream in = assetManager.open(assetPath);
-            OutputStream out = new FileOutputStream(outputFile);
-
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = in.read(buffer)) > 0) {
-                out.write(buffer, 0, length);
-            }
-
-            in.close();
-            out.close();
+        return assetExtractor.extract(assetPath);
+    }
 
-            Log.d(TAG, "File copied successfully: " + outputFile.getAbsolutePath());
-            return outputFile;
+    /**
+     * Open an asset as a seekable, read-only descriptor without extracting it.
+     * Works only for assets stored uncompressed in the APK (see noCompress in app/build.gradle);
+     * returns null for compressed assets so callers can fall back to copyAssetToInternalStorage.
+     */
+    public ParcelFileDescriptor openAssetDescriptor(String assetPath) {
+        AssetFileDescriptor assetFd;
+        try {
+            assetFd = assetManager.openFd(assetPath);
+        } catch (IOException e) {
+            // Thrown for compressed assets
+            Log.d(TAG, "Asset is not directly readable: " + assetPath);
+            return null;
+        }
 
+        try {
+            StorageManager storageManager = context.getSystemService(StorageManager.class);
+            return storageManager.openProxyFileDescriptor(ParcelFileDescriptor.MODE_READ_ONLY,
+                    new AssetRegionCallback(assetFd), getProxyHandler());
         } catch (IOException e) {
-            Log.e(TAG, "Error copying asset to internal storage", e);
+            Log.e(TAG, "Error opening asset descriptor: " + assetPath, e);
+            try {
+                assetFd.close();
+            } catch (IOException ignore) {
+            }
             return null;
         }
     }
 
+    /**
+     * Proxy descriptor reads are served on their own thread, so a caller blocked
+     * on the descriptor (e.g. PdfRenderer on the main thread) can't deadlock them.
+     */
+    private synchronized Handler getProxyHandler() {
+        if (proxyThread == null) {
+            proxyThread = new HandlerThread("AssetProxy");
+            proxyThread.start();
+        }
+        return new Handler(proxyThread.getLooper());
+    }
+
     /**
      * Get InputStream from asset file
      */
@@ -352,6 +474,40 @@ public class FileManager {
         return String.valueOf(filePath.hashCode());
     }
 
+    /**
+     * Stable cache key for a document's content. Changes when a user file is replaced
+     * (size/mtime) or when the APK carrying an asset is updated.
+     */
+    public String getFingerprint(Document document) {
+        String source;
+        if (document.isFromAssets()) {
+            source = document.getFilePath() + "|" + appStamp;
+        } else {
+            File file = new File(document.getFilePath());
+            source = document.getFilePath() + "|" + file.length() + "|" + file.lastModified();
+        }
+
+        return sha1Hex(source);
+    }
+
+    /**
+     * Hex SHA-1 of source: the one key scheme for fingerprints and extracted assets.
+     */
+    static String sha1Hex(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android
+            return Integer.toHexString(source.hashCode());
+        }
+    }
+
     /**
      * Get file size in human-readable format
      */
@@ -374,6 +530,14 @@ public class FileManager {
         File file = new File(document.getFilePath());
         if (file.exists() && file.delete()) {
             Log.d(TAG, "File deleted: " + document.getTitle());
+            synchronized (this) {
+                CatalogSnapshot current = getSnapshot();
+                String categoryId = document.getCategoryId();
+                List<Document> documents = new ArrayList<>(Arrays.asList(current.getCategory(categoryId)));
+                if (removeByPath(documents, document.getFilePath())) {
+                    publish(current.withCategory(categoryId, documents.toArray(new Document[0])));
+                }
+            }
             return true;
         }
 
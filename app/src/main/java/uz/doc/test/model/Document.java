@@ -2,65 +2,58 @@ package uz.doc.test.model;
 
 import java.io.Serializable;
 
-public class Document implements Serializable {
-    private String id;
-    private String title;
-    private String filePath;
-    private String categoryId;
-    private DocumentType type;
-    private long fileSize;
-    private long lastModified;
-    private boolean isFavorite;
-    private boolean isFromAssets;  // true = asset file, false = user-uploaded file
+/**
+ * Immutable catalog entry. Instances are shared between the catalog cache and
+ * the UI, so per-user state (favorites, recents) lives in SharedPrefsHelper instead.
+ */
+public final class Document implements Serializable {
+    private final String id;
+    private final String title;
+    private final String filePath;
+    private final String categoryId;
+    private final DocumentType type;
+    private final long fileSize;
+    private final long lastModified;
+    private final boolean isFromAssets;  // true = asset file, false = user-uploaded file
 
     public enum DocumentType {
         PDF, PPTX, PPT
     }
 
-    public Document() {
-        this.isFavorite = false;
-        this.isFromAssets = true;  // Default to asset file
+    public Document(String id, String title, String filePath, String categoryId, DocumentType type) {
+        this(id, title, filePath, categoryId, type, true, 0, 0);
     }
 
-    public Document(String id, String title, String filePath, String categoryId, DocumentType type) {
+    public Document(String id, String title, String filePath, String categoryId, DocumentType type,
+                    boolean isFromAssets, long fileSize, long lastModified) {
         this.id = id;
         this.title = title;
         this.filePath = filePath;
         this.categoryId = categoryId;
         this.type = type;
-        this.isFavorite = false;
-        this.isFromAssets = true;
+        this.isFromAssets = isFromAssets;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
     }
 
-    // Getters and Setters
+    // Getters
     public String getId() { return id; }
-    public void setId(String id) { this.id = id; }
 
     public String getTitle() { return title; }
-    public void setTitle(String title) { this.title = title; }
 
     public String getFilePath() { return filePath; }
-    public void setFilePath(String filePath) { this.filePath = filePath; }
 
     public String getCategoryId() { return categoryId; }
-    public void setCategoryId(String categoryId) { this.categoryId = categoryId; }
 
     public DocumentType getType() { return type; }
-    public void setType(DocumentType type) { this.type = type; }
 
     public long getFileSize() { return fileSize; }
-    public void setFileSize(long fileSize) { this.fileSize = fileSize; }
 
     public long getLastModified() { return lastModified; }
-    public void setLastModified(long lastModified) { this.lastModified = lastModified; }
-
-    public boolean isFavorite() { return isFavorite; }
-    public void setFavorite(boolean favorite) { isFavorite = favorite; }
 
     public boolean isFromAssets() { return isFromAssets; }
-    public void setFromAssets(boolean fromAssets) { isFromAssets = fromAssets; }
 
     public String getFileExtension() {
         return type.name().toLowerCase();
     }
-}
\ No newline at end of file
+}
@@ -28,6 +28,7 @@ import uz.doc.test.model.Document;
 import uz.doc.test.utils.Constants;
 import uz.doc.test.utils.SharedPrefsHelper;
 import uz.doc.test.viewer.DocumentViewerActivity;
+import uz.doc.test.viewer.PptConverter;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -165,7 +166,7 @@ public class CategoryFilesActivity extends AppCompatActivity {
             }
 
             // Copy file to app's internal storage in category folder
-            File categoryDir = new File(getFilesDir(), "user_files/" + category.getId());
+            File categoryDir = fileManager.getUserCategoryDir(category.getId());
             if (!categoryDir.exists()) {
                 categoryDir.mkdirs();
             }
@@ -191,6 +192,9 @@ public class CategoryFilesActivity extends AppCompatActivity {
             outputStream.close();
             inputStream.close();
 
+            // Update the catalog index instead of rescanning the folder
+            fileManager.onUserFileAdded(category.getId(), destFile);
+
             Toast.makeText(this, "Fayl qo'shildi: " + fileName, Toast.LENGTH_SHORT).show();
 
             // Reload files
@@ -198,6 +202,8 @@ public class CategoryFilesActivity extends AppCompatActivity {
 
         } catch (Exception e) {
             Log.e(TAG, "Error uploading file", e);
+            // The category folder may now hold a partial copy; resync the catalog with disk
+            fileManager.invalidateCategory(category.getId());
             Toast.makeText(this, "Faylni qo'shishda xatolik", Toast.LENGTH_SHORT).show();
         }
     }
@@ -234,6 +240,8 @@ public class CategoryFilesActivity extends AppCompatActivity {
             emptyState.setVisibility(View.GONE);
             rvFiles.setVisibility(View.VISIBLE);
             documentAdapter.setDocuments(documents);
+            // Legacy presentations open from a converted slide pack; prepare them in the background
+            PptConverter.convertInBackground(this, documents);
         }
     }
 
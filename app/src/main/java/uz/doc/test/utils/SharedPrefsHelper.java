@@ -6,6 +6,7 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -14,10 +15,14 @@ public class SharedPrefsHelper {
     private static SharedPrefsHelper instance;
     private SharedPreferences prefs;
     private Gson gson;
+    // In-memory overlay of favorite ids so list binding doesn't copy the pref set per row
+    private final Set<String> favoritesCache;
 
     private SharedPrefsHelper(Context context) {
         prefs = context.getSharedPreferences(Constants.PREFS_NAME, Context.MODE_PRIVATE);
         gson = new Gson();
+        favoritesCache = Collections.synchronizedSet(
+                new HashSet<>(prefs.getStringSet(Constants.PREFS_FAVORITES, new HashSet<>())));
     }
 
     public static synchronized SharedPrefsHelper getInstance(Context context) {
@@ -29,23 +34,23 @@ public class SharedPrefsHelper {
 
     // Favorites management
     public void addFavorite(String documentId) {
-        Set<String> favorites = getFavorites();
-        favorites.add(documentId);
-        prefs.edit().putStringSet(Constants.PREFS_FAVORITES, favorites).apply();
+        favoritesCache.add(documentId);
+        prefs.edit().putStringSet(Constants.PREFS_FAVORITES, getFavorites()).apply();
     }
 
     public void removeFavorite(String documentId) {
-        Set<String> favorites = getFavorites();
-        favorites.remove(documentId);
-        prefs.edit().putStringSet(Constants.PREFS_FAVORITES, favorites).apply();
+        favoritesCache.remove(documentId);
+        prefs.edit().putStringSet(Constants.PREFS_FAVORITES, getFavorites()).apply();
     }
 
     public Set<String> getFavorites() {
-        return new HashSet<>(prefs.getStringSet(Constants.PREFS_FAVORITES, new HashSet<>()));
+        synchronized (favoritesCache) {
+            return new HashSet<>(favoritesCache);
+        }
     }
 
     public boolean isFavorite(String documentId) {
-        return getFavorites().contains(documentId);
+        return favoritesCache.contains(documentId);
     }
 
     // Recent files management (stores file paths with timestamp)
@@ -0,0 +1,95 @@
+package uz.doc.test.viewer;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable page bitmaps bucketed by exact dimensions. Pages of a document
+ * almost always share a size, so evicted bitmaps can be rendered into again
+ * instead of allocating (and later collecting) a new multi-megabyte bitmap.
+ * Thread-safe: bitmaps are returned on the main thread and taken on render threads.
+ */
+class BitmapPool {
+    private final Map<Long, ArrayDeque<Bitmap>> buckets = new HashMap<>();
+    private final long maxBytes;
+    private long currentBytes;
+    private int requests;
+    private int reuses;
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * A white ARGB_8888 bitmap of the given size, reused from the pool when possible.
+     */
+    Bitmap obtain(int width, int height) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            requests++;
+            ArrayDeque<Bitmap> bucket = buckets.get(key(width, height));
+            if (bucket != null && !bucket.isEmpty()) {
+                bitmap = bucket.pop();
+                currentBytes -= bitmap.getAllocationByteCount();
+                reuses++;
+            }
+        }
+
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        bitmap.eraseColor(Color.WHITE);
+        return bitmap;
+    }
+
+    /**
+     * Return a bitmap that is no longer cached or displayed anywhere.
+     */
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (currentBytes + size > maxBytes) {
+            return; // Pool full - let the GC have it
+        }
+        long key = key(bitmap.getWidth(), bitmap.getHeight());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+        bucket.push(bitmap);
+        currentBytes += size;
+    }
+
+    synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            buckets.clear();
+            currentBytes = 0;
+        }
+    }
+
+    synchronized void clear() {
+        buckets.clear();
+        currentBytes = 0;
+    }
+
+    synchronized String stats() {
+        int reuseRate = requests == 0 ? 0 : reuses * 100 / requests;
+        return "pooled=" + currentBytes / 1024 + "KB"
+                + " requests=" + requests
+                + " reuses=" + reuses
+                + " reuseRate=" + reuseRate + "%";
+    }
+
+    private static long key(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+}
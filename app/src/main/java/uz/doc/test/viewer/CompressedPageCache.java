@@ -0,0 +1,225 @@
+package uz.doc.test.viewer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Second memory tier behind {@link PageBitmapCache}: pages evicted from the bitmap
+ * cache are kept as RGB_565 pixels deflated into direct ByteBuffers. Lecture pages
+ * are mostly flat background and text, so they shrink far more than the 2x of the
+ * pixel format alone, and inflating one back is a few milliseconds instead of a
+ * PdfRenderer pass.
+ *
+ * Compression runs on its own thread; {@link #get} is called from the render threads,
+ * which take turns on one set of decode scratch buffers.
+ */
+class CompressedPageCache {
+    private static final String TAG = "CompressedPageCache";
+
+    private static final class Entry {
+        final int width;
+        final int height;
+        final ByteBuffer data; // direct, deflated RGB_565 pixels
+
+        Entry(int width, int height, ByteBuffer data) {
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
+    private final LruCache<Integer, Entry> entries;
+    private final ExecutorService compressExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean closed;
+    private long rawBytes; // uncompressed ARGB size of the pages added, for the ratio in stats()
+    private long storedBytes;
+    private int hits;
+    private int misses;
+
+    // Compress thread scratch
+    private Bitmap compressScratch;
+    private ByteBuffer compressPixels;
+    private byte[] compressOutput = new byte[64 * 1024];
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    // Render thread scratch, guarded by decodeLock
+    private final Object decodeLock = new Object();
+    private Bitmap decodeScratch;
+    private byte[] decodeInput = new byte[0];
+    private byte[] decodePixels = new byte[0];
+    private final Inflater inflater = new Inflater();
+
+    CompressedPageCache(Context context) {
+        this.entries = new LruCache<Integer, Entry>(MemoryBudget.compressedPageBytes(context)) {
+            @Override
+            protected int sizeOf(Integer pageIndex, Entry entry) {
+                return entry.data.capacity();
+            }
+        };
+    }
+
+    /**
+     * Compress the page in the background. The bitmap is only read, and must not be
+     * reused until onDone runs (on the main thread). Once closed, nothing is
+     * compressed and onDone runs right away.
+     */
+    void put(int pageIndex, Bitmap bitmap, Runnable onDone) {
+        if (closed) {
+            onDone.run();
+            return;
+        }
+        compressExecutor.execute(() -> {
+            try {
+                Entry entry = compress(bitmap);
+                entries.put(pageIndex, entry);
+                synchronized (this) {
+                    rawBytes += bitmap.getAllocationByteCount();
+                    storedBytes += entry.data.capacity();
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Failed to compress page " + pageIndex, e);
+            } finally {
+                mainHandler.post(onDone);
+            }
+        });
+    }
+
+    /**
+     * Inflate a page into a bitmap from the pool, or return null if it isn't held
+     * at this width. Called on a render thread.
+     */
+    Bitmap get(int pageIndex, int width, BitmapPool bitmapPool) {
+        Entry entry = entries.get(pageIndex);
+        if (entry == null || entry.width != width) {
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+
+        Bitmap bitmap;
+        synchronized (decodeLock) {
+            bitmap = decode(pageIndex, entry, bitmapPool);
+        }
+        if (bitmap != null) {
+            synchronized (this) {
+                hits++;
+            }
+        }
+        return bitmap;
+    }
+
+    private Bitmap decode(int pageIndex, Entry entry, BitmapPool bitmapPool) {
+        int pixelBytes = entry.width * entry.height * 2;
+        if (decodePixels.length < pixelBytes) {
+            decodePixels = new byte[pixelBytes];
+        }
+        ByteBuffer data = entry.data.duplicate();
+        data.clear();
+        if (decodeInput.length < data.capacity()) {
+            decodeInput = new byte[data.capacity()];
+        }
+        data.get(decodeInput, 0, data.capacity());
+
+        inflater.reset();
+        inflater.setInput(decodeInput, 0, data.capacity());
+        try {
+            int inflated = 0;
+            while (inflated < pixelBytes && !inflater.finished()) {
+                int n = inflater.inflate(decodePixels, inflated, pixelBytes - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += n;
+            }
+            if (inflated != pixelBytes) {
+                throw new DataFormatException("Short page data: " + inflated + "/" + pixelBytes);
+            }
+        } catch (DataFormatException e) {
+            Log.w(TAG, "Dropping corrupt page " + pageIndex, e);
+            entries.remove(pageIndex);
+            return null;
+        }
+
+        decodeScratch = scratchFor(decodeScratch, entry.width, entry.height);
+        decodeScratch.copyPixelsFromBuffer(ByteBuffer.wrap(decodePixels, 0, pixelBytes));
+
+        // Pages are shown and rendered as ARGB_8888, so widen back into a pooled bitmap
+        Bitmap bitmap = bitmapPool.obtain(entry.width, entry.height);
+        new Canvas(bitmap).drawBitmap(decodeScratch, 0, 0, null);
+        return bitmap;
+    }
+
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            entries.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            entries.trimToSize(entries.maxSize() / 2);
+        }
+    }
+
+    void close() {
+        closed = true;
+        compressExecutor.shutdownNow();
+        entries.evictAll();
+    }
+
+    synchronized String stats() {
+        long ratio = storedBytes == 0 ? 0 : rawBytes / storedBytes;
+        return "compressed=" + entries.size() / 1024 + "KB/" + entries.maxSize() / 1024 + "KB"
+                + " pages=" + entries.snapshot().size()
+                + " ratio=" + ratio + "x"
+                + " hits=" + hits
+                + " misses=" + misses;
+    }
+
+    private Entry compress(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        compressScratch = scratchFor(compressScratch, width, height);
+        new Canvas(compressScratch).drawBitmap(bitmap, 0, 0, null);
+
+        int pixelBytes = width * height * 2;
+        if (compressPixels == null || compressPixels.capacity() < pixelBytes) {
+            compressPixels = ByteBuffer.allocate(pixelBytes);
+        }
+        compressPixels.clear();
+        compressScratch.copyPixelsToBuffer(compressPixels);
+
+        deflater.reset();
+        deflater.setInput(compressPixels.array(), 0, pixelBytes);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressOutput.length) {
+                byte[] grown = new byte[compressOutput.length * 2];
+                System.arraycopy(compressOutput, 0, grown, 0, length);
+                compressOutput = grown;
+            }
+            length += deflater.deflate(compressOutput, length, compressOutput.length - length);
+        }
+
+        ByteBuffer data = ByteBuffer.allocateDirect(length);
+        data.put(compressOutput, 0, length);
+        return new Entry(width, height, data);
+    }
+
+    private static Bitmap scratchFor(Bitmap scratch, int width, int height) {
+        if (scratch != null && scratch.getWidth() == width && scratch.getHeight() == height) {
+            return scratch;
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+    }
+}
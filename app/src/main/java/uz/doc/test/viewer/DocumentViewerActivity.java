@@ -1,22 +1,19 @@
 package uz.doc.test.viewer;
 
 import android.content.Intent;
-import android.graphics.Color;
-import android.graphics.pdf.PdfRenderer;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
-import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.webkit.WebSettings;
 import android.webkit.WebView;
-import android.webkit.WebViewClient;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.content.FileProvider;
@@ -25,11 +22,6 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
-import org.apache.poi.xslf.usermodel.XSLFPictureShape;
-import org.apache.poi.xslf.usermodel.XSLFShape;
-import org.apache.poi.xslf.usermodel.XSLFSlide;
-import org.apache.poi.xslf.usermodel.XSLFTextShape;
-import org.apache.poi.xslf.usermodel.XMLSlideShow;
 
 import uz.doc.test.R;
 import uz.doc.test.manager.FileManager;
@@ -38,9 +30,7 @@ import uz.doc.test.utils.Constants;
 import uz.doc.test.utils.SharedPrefsHelper;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -49,6 +39,7 @@ public class DocumentViewerActivity extends AppCompatActivity {
     private static final String TAG = "DocumentViewerActivity";
 
     private Toolbar toolbar;
+    private ZoomContainer zoomContainer;
     private RecyclerView pdfRecyclerView;
     private WebView webView;
     private ProgressBar progressBar;
@@ -58,11 +49,17 @@ public class DocumentViewerActivity extends AppCompatActivity {
     private Document document;
     private FileManager fileManager;
     private SharedPrefsHelper prefsHelper;
-    private ParcelFileDescriptor pdfFileDescriptor;
-    private PdfRenderer pdfRenderer;
+    private PdfRenderWorker pdfRenderWorker;
+    private PageDiskCache pageDiskCache;
+    private String documentFingerprint;
+    private PageSizeTable pdfPageSizes;
     private PdfPageAdapter pdfPageAdapter;
     private PptxSlideAdapter pptxSlideAdapter;
+    private SlideSource slideSource;
+    private SlidePackBuilder slidePackBuilder;
     private final ExecutorService pptxExecutor = Executors.newSingleThreadExecutor();
+    // Opening the PDF and small disk writes for the PDF viewer (cached page metadata)
+    private final ExecutorService pdfExecutor = Executors.newSingleThreadExecutor();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -78,6 +75,7 @@ public class DocumentViewerActivity extends AppCompatActivity {
 
     private void initViews() {
         toolbar = findViewById(R.id.toolbar);
+        zoomContainer = findViewById(R.id.zoom_container);
         pdfRecyclerView = findViewById(R.id.pdf_viewer);
         webView = findViewById(R.id.webview);
         progressBar = findViewById(R.id.progress_bar);
@@ -144,29 +142,86 @@ public class DocumentViewerActivity extends AppCompatActivity {
     }
 
     private void loadPDF() {
-        try {
-            showLoading();
+        showLoading();
+        // Fingerprinting stats user files; keep it off the main thread with the open
+        pdfExecutor.execute(() -> {
+            String fingerprint = fileManager.getFingerprint(document);
+            runOnUiThread(() -> {
+                if (isDestroyed()) return;
+                documentFingerprint = fingerprint;
+                // Reuse renderers left open by a recent viewer or warmed up from the document list
+                DocumentWarmup.takeSession(this, fingerprint, session -> {
+                    if (isDestroyed()) {
+                        if (session != null) {
+                            PdfSessionCache.getInstance(this).park(fingerprint, session);
+                        }
+                        return;
+                    }
+                    showPDF(session);
+                });
+            });
+        });
+    }
 
-            File file;
-            if (document.isFromAssets()) {
-                // Asset file - copy from assets
-                file = fileManager.copyAssetToInternalStorage(document.getFilePath());
-            } else {
-                // User-uploaded file - use directly
-                file = new File(document.getFilePath());
-            }
+    private void showPDF(PdfSessionCache.Session session) {
+        if (session != null) {
+            pdfRenderWorker = session.renderWorker;
+            showPages(session);
+            return;
+        }
 
-            if (file == null || !file.exists()) {
-                showError();
-                return;
+        // Opening extracts an asset and opens every renderer, so it runs in the background
+        pdfExecutor.execute(() -> {
+            PdfRenderWorker opened = null;
+            try {
+                opened = PdfRenderWorker.open(this, document);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Error loading PDF", e);
             }
+            final PdfRenderWorker renderWorker = opened;
+            runOnUiThread(() -> {
+                if (isDestroyed()) {
+                    if (renderWorker != null) {
+                        renderWorker.close();
+                    }
+                    return;
+                }
+                if (renderWorker == null) {
+                    showError();
+                    return;
+                }
+                pdfRenderWorker = renderWorker;
+                showPages(null);
+            });
+        });
+    }
 
-            pdfFileDescriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
-            pdfRenderer = new PdfRenderer(pdfFileDescriptor);
-            pdfPageAdapter = new PdfPageAdapter(this, pdfRenderer);
+    /**
+     * Page through the document of {@link #pdfRenderWorker}, a PDF or drawn slides,
+     * with what a previous viewer left in session (may be null).
+     */
+    private void showPages(PdfSessionCache.Session session) {
+        try {
+            Log.d(TAG, "Rendering with " + pdfRenderWorker.getRendererCount() + " renderer(s)"
+                    + (session != null ? ", reused" : ""));
+
+            pageDiskCache = new PageDiskCache(this, documentFingerprint, pdfRenderWorker.getRenderMode());
+            pdfRenderWorker.setDiskCache(pageDiskCache);
+            pdfPageAdapter = new PdfPageAdapter(this, pdfRenderWorker);
+            PdfLayoutManager layoutManager = new PdfLayoutManager(this);
+            if (session != null && session.firstPage != null) {
+                pdfPageAdapter.putCachedPage(0, session.firstPage);
+            }
 
-            pdfRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+            pdfRecyclerView.setLayoutManager(layoutManager);
             pdfRecyclerView.setAdapter(pdfPageAdapter);
+            pdfRecyclerView.addOnScrollListener(new PdfPrefetcher(pdfPageAdapter));
+            setupZoomTiles();
+            if (session != null && session.pageSizes != null) {
+                applyPageSizes(layoutManager, session.pageSizes);
+            } else {
+                loadPageSizes(layoutManager, documentFingerprint);
+            }
             pdfRecyclerView.setVisibility(View.VISIBLE);
             webView.setVisibility(View.GONE);
             hideLoading();
@@ -174,14 +229,67 @@ public class DocumentViewerActivity extends AppCompatActivity {
         } catch (Exception e) {
             hideLoading();
             showError();
-            Log.e(TAG, "Error loading PDF", e);
+            Log.e(TAG, "Error showing pages", e);
         }
     }
 
-    private void loadPPTX() {
-        try {
-            showLoading();
+    /**
+     * Keep zoom tiles in step with the viewport: refreshed on every scroll frame,
+     * but only rendered once scrolling settles or the zoom/pan changes.
+     */
+    private void setupZoomTiles() {
+        zoomContainer.setOnViewportChangeListener(zoom -> {
+            if (pdfPageAdapter != null) {
+                pdfPageAdapter.updateTiles(true);
+            }
+        });
+        pdfRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                pdfPageAdapter.updateTiles(recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE);
+            }
+
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    pdfPageAdapter.updateTiles(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * Give the adapter and layout manager exact page sizes: from the per-document
+     * cache when this document was opened before, otherwise from a background pass
+     * on the render thread whose result is cached for next time.
+     */
+    private void loadPageSizes(PdfLayoutManager layoutManager, String fingerprint) {
+        File cacheFile = PageSizeTable.cacheFile(this, fingerprint);
+        int pageCount = pdfRenderWorker.getPageCount();
+
+        PageSizeTable cached = PageSizeTable.load(cacheFile, pageCount);
+        if (cached != null) {
+            applyPageSizes(layoutManager, cached);
+            return;
+        }
 
+        pdfRenderWorker.measurePages(pageSizes -> {
+            if (isDestroyed()) return;
+            pdfExecutor.execute(() -> pageSizes.save(cacheFile));
+            applyPageSizes(layoutManager, pageSizes);
+        });
+    }
+
+    private void applyPageSizes(PdfLayoutManager layoutManager, PageSizeTable pageSizes) {
+        pdfPageSizes = pageSizes;
+        pdfPageAdapter.setPageSizes(pageSizes);
+        layoutManager.setPageSizes(pageSizes);
+    }
+
+    private void loadPPTX() {
+        showLoading();
+        // Extracting an asset copies the whole file; do it (and the fingerprint) in the background
+        pptxExecutor.execute(() -> {
             File file;
             if (document.isFromAssets()) {
                 // Copy file from assets to internal storage first
@@ -190,135 +298,157 @@ public class DocumentViewerActivity extends AppCompatActivity {
                 // User-uploaded file - use directly
                 file = new File(document.getFilePath());
             }
+            String fingerprint = fileManager.getFingerprint(document);
 
-            if (file == null || !file.exists()) {
-                showError();
-                return;
-            }
-
-            if (document.getType() == Document.DocumentType.PPTX) {
-                loadPPTXInsideApp(file);
-            } else {
-                // Legacy PPT is not supported for in-app rendering yet
-                pdfRecyclerView.setVisibility(View.GONE);
-                webView.setVisibility(View.VISIBLE);
-                setupWebView();
-                String html = createPPTXPlaceholderHTML();
-                webView.loadDataWithBaseURL(null, html, "text/html", "UTF-8", null);
-                hideLoading();
-            }
-
-        } catch (Exception e) {
-            hideLoading();
-            showError();
-            Log.e(TAG, "Error loading PPTX", e);
-        }
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                if (file == null || !file.exists()) {
+                    showError();
+                    return;
+                }
+                documentFingerprint = fingerprint;
+                try {
+                    if (document.getType() == Document.DocumentType.PPTX) {
+                        loadPPTXInsideApp(file);
+                    } else {
+                        loadPPT(file);
+                    }
+                } catch (Exception e) {
+                    hideLoading();
+                    showError();
+                    Log.e(TAG, "Error loading PPTX", e);
+                }
+            });
+        });
     }
 
     private void loadPPTXInsideApp(File file) {
         pdfRecyclerView.setVisibility(View.VISIBLE);
         webView.setVisibility(View.GONE);
-        pdfRecyclerView.setLayoutManager(new LinearLayoutManager(this));
 
-        pptxExecutor.execute(() -> {
-            List<PptxSlideAdapter.SlideItem> slides = new ArrayList<>();
-            try (FileInputStream fis = new FileInputStream(file);
-                 XMLSlideShow ppt = new XMLSlideShow(fis)) {
-                List<XSLFSlide> pptSlides = ppt.getSlides();
-                for (int i = 0; i < pptSlides.size(); i++) {
-                    XSLFSlide slide = pptSlides.get(i);
-
-                    StringBuilder text = new StringBuilder();
-                    byte[] firstImage = null;
-
-                    for (XSLFShape shape : slide.getShapes()) {
-                        if (shape instanceof XSLFTextShape) {
-                            String t = ((XSLFTextShape) shape).getText();
-                            if (t != null) {
-                                t = t.trim();
-                                if (!t.isEmpty()) {
-                                    if (text.length() > 0) text.append("\n\n");
-                                    text.append(t);
-                                }
-                            }
-                        } else if (firstImage == null && shape instanceof XSLFPictureShape) {
-                            try {
-                                firstImage = ((XSLFPictureShape) shape).getPictureData().getData();
-                            } catch (Exception ignore) {
-                                // keep null
-                            }
-                        }
-                    }
+        // Slides drawn for a recent viewer are still open
+        PdfSessionCache.Session session = PdfSessionCache.getInstance(this).take(documentFingerprint);
+        if (session != null) {
+            pdfRenderWorker = session.renderWorker;
+            showPages(session);
+            return;
+        }
 
-                    slides.add(new PptxSlideAdapter.SlideItem(i + 1, text.toString(), firstImage));
+        File packFile = SlidePack.cacheFile(this, documentFingerprint);
+        pptxExecutor.execute(() -> {
+            // A deck opened before is one mapped file; otherwise read only the package
+            // directory and slide list, and parse slides as they're shown
+            SlideSource source = SlidePack.load(packFile, file);
+            PptxReader reader = null;
+            if (source == null) {
+                try {
+                    reader = new PptxReader(file);
+                    source = reader;
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to open PPTX", e);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to parse PPTX", e);
             }
+            final SlideSource opened = source;
+            final PptxReader parsing = reader;
 
             runOnUiThread(() -> {
-                if (isFinishing()) return;
-                if (slides.isEmpty()) {
-                    showError();
+                if (isFinishing() || opened == null || opened.getSlideCount() == 0) {
+                    closeQuietly(opened);
+                    if (!isFinishing()) showError();
                     return;
                 }
-                pptxSlideAdapter = new PptxSlideAdapter(this);
-                pptxSlideAdapter.setSlides(slides);
-                pdfRecyclerView.setAdapter(pptxSlideAdapter);
-                hideLoading();
+                if (opened.getSlideWidth() > 0) {
+                    // Drawn like PDF pages, with the same caches, prefetching and zoom
+                    pdfRenderWorker = PdfRenderWorker.forSlides(this, opened);
+                    showPages(null);
+                } else {
+                    // No slide size to draw at; list the slides' text and pictures
+                    showSlideList(opened);
+                }
+                if (parsing != null) {
+                    slidePackBuilder = new SlidePackBuilder(parsing, packFile, pptxExecutor);
+                    slidePackBuilder.start();
+                }
             });
         });
     }
 
-    private void setupWebView() {
-        WebSettings webSettings = webView.getSettings();
-        webSettings.setJavaScriptEnabled(true);
-        webSettings.setLoadWithOverviewMode(true);
-        webSettings.setUseWideViewPort(true);
-        webSettings.setBuiltInZoomControls(true);
-        webSettings.setDisplayZoomControls(false);
+    /**
+     * Open a legacy .ppt from its converted slide pack, converting it first (with
+     * progress in the toolbar) if the background conversion hasn't got to it yet.
+     */
+    private void loadPPT(File file) {
+        pdfRecyclerView.setVisibility(View.VISIBLE);
+        webView.setVisibility(View.GONE);
 
-        webView.setBackgroundColor(Color.WHITE);
-        webView.setWebViewClient(new WebViewClient() {
-            @Override
-            public void onPageFinished(WebView view, String url) {
-                hideLoading();
-            }
+        File packFile = SlidePack.cacheFile(this, documentFingerprint);
+        pptxExecutor.execute(() -> {
+            SlidePack pack = SlidePack.load(packFile, file);
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                if (pack != null) {
+                    showConvertedPPT(pack);
+                    return;
+                }
 
-            @Override
-            public void onReceivedError(WebView view, int errorCode, String description, String failingUrl) {
-                hideLoading();
-                showError();
-            }
+                PptConverter.convert(this, document, documentFingerprint, new PptConverter.ProgressListener() {
+                    @Override
+                    public void onProgress(int convertedSlides, int slideCount) {
+                        setSubtitle("Slaydlar tayyorlanmoqda: " + convertedSlides + "/" + slideCount);
+                    }
+
+                    @Override
+                    public void onFinished(boolean success) {
+                        setSubtitle(null);
+                        if (isFinishing()) return;
+                        if (!success) {
+                            showError();
+                            return;
+                        }
+                        pptxExecutor.execute(() -> {
+                            SlidePack converted = SlidePack.load(packFile, file);
+                            runOnUiThread(() -> {
+                                if (!isFinishing()) showConvertedPPT(converted);
+                            });
+                        });
+                    }
+                });
+            });
         });
     }
 
-    private String createPPTXPlaceholderHTML() {
-        return "<!DOCTYPE html>" +
-                "<html>" +
-                "<head>" +
-                "<meta name='viewport' content='width=device-width, initial-scale=1.0'>" +
-                "<style>" +
-                "body { font-family: Arial, sans-serif; padding: 20px; text-align: center; background: #f5f5f5; }" +
-                ".container { background: white; padding: 40px; border-radius: 12px; margin: 20px; box-shadow: 0 2px 8px rgba(0,0,0,0.1); }" +
-                ".icon { font-size: 64px; color: #FF9800; margin-bottom: 20px; }" +
-                "h2 { color: #333; margin-bottom: 10px; }" +
-                "p { color: #666; line-height: 1.6; }" +
-                ".filename { font-weight: bold; color: #1976D2; margin-top: 20px; padding: 10px; background: #E3F2FD; border-radius: 4px; }" +
-                "</style>" +
-                "</head>" +
-                "<body>" +
-                "<div class='container'>" +
-                "<div class='icon'>📊</div>" +
-                "<h2>PowerPoint Taqdimoti</h2>" +
-                "<p>Ushbu PowerPoint faylini ko'rish uchun tizimda maxsus ko'rish vositasi kerak.</p>" +
-                "<p>Fayl muvaffaqiyatli yuklandi va offline rejimda saqlanmoqda.</p>" +
-                "<div class='filename'>" + document.getTitle() + ".pptx</div>" +
-                "<p style='margin-top: 20px; font-size: 14px; color: #999;'>" +
-                "Keyingi yangilanishda PPTX fayllarini to'liq ko'rish imkoniyati qo'shiladi.</p>" +
-                "</div>" +
-                "</body>" +
-                "</html>";
+    private void showConvertedPPT(SlidePack pack) {
+        if (pack == null || pack.getSlideCount() == 0) {
+            showError();
+            return;
+        }
+        showSlideList(pack);
+    }
+
+    /**
+     * List the slides' text and pictures, for decks that can't be drawn as pages.
+     */
+    private void showSlideList(SlideSource source) {
+        slideSource = source;
+        pdfRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        pptxSlideAdapter = new PptxSlideAdapter(this, source, documentFingerprint, pptxExecutor);
+        pdfRecyclerView.setAdapter(pptxSlideAdapter);
+        hideLoading();
+    }
+
+    private void setSubtitle(String subtitle) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(subtitle);
+        }
+    }
+
+    private static void closeQuietly(SlideSource source) {
+        if (source == null) return;
+        try {
+            source.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close PPTX", e);
+        }
     }
 
     private void showLoading() {
@@ -420,26 +550,54 @@ public class DocumentViewerActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (pdfPageAdapter != null) {
+            pdfPageAdapter.trimMemory(level);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (pdfPageAdapter != null) {
+            Log.d(TAG, "Page cache: " + pdfPageAdapter.getCacheStats());
+            Log.d(TAG, "Prefetch: " + pdfPageAdapter.getPrefetchStats());
+        }
+        if (pageDiskCache != null) {
+            Log.d(TAG, "Page disk cache: " + pageDiskCache.stats());
+        }
+        if (pptxSlideAdapter != null) {
+            pptxSlideAdapter.cancel();
+        }
+        if (slidePackBuilder != null) {
+            slidePackBuilder.cancel();
+        }
+        if (document != null && document.getType() == Document.DocumentType.PPT) {
+            // The conversion goes on without this viewer
+            PptConverter.removeListener(documentFingerprint);
+        }
         try {
             pptxExecutor.shutdownNow();
         } catch (Exception ignore) {
         }
-        try {
-            if (pdfRenderer != null) {
-                pdfRenderer.close();
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to close PdfRenderer", e);
+        closeQuietly(slideSource);
+        // Let pending cache writes finish
+        pdfExecutor.shutdown();
+        Bitmap firstPage = pdfPageAdapter != null ? pdfPageAdapter.peekCachedPage(0) : null;
+        if (pdfRecyclerView != null) {
+            // Recycles the page holders, which cancels their pending renders
+            pdfRecyclerView.setAdapter(null);
         }
-        try {
-            if (pdfFileDescriptor != null) {
-                pdfFileDescriptor.close();
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to close PDF file descriptor", e);
+        if (pdfPageAdapter != null) {
+            // Drop queued prefetches so the renderers are idle when parked
+            pdfPageAdapter.prefetch(new int[0]);
+            pdfPageAdapter.close();
+        }
+        if (pdfRenderWorker != null) {
+            // Keep the document open for a quick reopen; the session cache closes it when evicted
+            PdfSessionCache.getInstance(this).put(documentFingerprint, pdfRenderWorker, pdfPageSizes, firstPage);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,259 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import uz.doc.test.manager.FileManager;
+import uz.doc.test.model.Document;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Speculative document open, started when a document list item is touched or
+ * focused, before the click arrives.
+ *
+ * For a PDF this opens the file and its renderers and renders the first page in
+ * the background, then parks the result in {@link PdfSessionCache}, where the
+ * viewer picks it up as if the document had just been closed. A viewer that starts
+ * while the warm-up is still running waits for the open instead of repeating it.
+ * Presentations only get their asset extracted. A warm-up is cancelled (and its
+ * renderers closed) when the touch turns into a scroll or focus moves on, and
+ * dropped when the first page fails to render. The document is
+ * fingerprinted in the background too, since that hashes it (and stats user files).
+ *
+ * Main thread only.
+ */
+public final class DocumentWarmup {
+    private static final String TAG = "DocumentWarmup";
+
+    interface SessionCallback {
+        /** session is null when there was nothing warm to hand over */
+        void onSession(PdfSessionCache.Session session);
+    }
+
+    private static final class Pending {
+        String path;
+        Future<?> openTask;
+        PdfRenderWorker renderWorker;
+        PageSizeTable pageSizes;
+        RenderTask firstPageTask;
+        SessionCallback waiter;
+        boolean finished;
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Warm-ups still opening or rendering, by document fingerprint
+    private static final Map<String, Pending> pending = new HashMap<>();
+    // Sessions parked by a warm-up that no viewer has taken yet
+    private static final Set<String> parkedByWarmup = new HashSet<>();
+    // Documents still being fingerprinted, by file path
+    private static final Set<String> resolving = new HashSet<>();
+    // Fingerprints of the pending and parked warm-ups, by file path, so cancel needn't hash
+    private static final Map<String, String> fingerprints = new HashMap<>();
+    // Documents a viewer opened itself while warm-ups were still fingerprinting
+    private static final Set<String> claimed = new HashSet<>();
+
+    private DocumentWarmup() {
+    }
+
+    /**
+     * Start opening the document in the background, unless it is already open or opening.
+     */
+    public static void warmUp(Context context, Document document) {
+        FileManager fileManager = FileManager.getInstance(context);
+        if (document.getType() != Document.DocumentType.PDF) {
+            if (document.isFromAssets()) {
+                executor.execute(() -> fileManager.copyAssetToInternalStorage(document.getFilePath()));
+            }
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        String path = document.getFilePath();
+        if (!resolving.add(path)) return;
+        int width = appContext.getResources().getDisplayMetrics().widthPixels;
+        executor.execute(() -> {
+            String fingerprint = fileManager.getFingerprint(document);
+            mainHandler.post(() -> {
+                // Not there any more when cancelled meanwhile
+                if (resolving.remove(path)) {
+                    start(appContext, document, fingerprint, width);
+                }
+                if (resolving.isEmpty()) {
+                    claimed.clear();
+                }
+            });
+        });
+    }
+
+    private static void start(Context appContext, Document document, String fingerprint, int width) {
+        if (claimed.remove(fingerprint) || pending.containsKey(fingerprint) || PdfSessionCache.getInstance(appContext).contains(fingerprint)) {
+            return;
+        }
+
+        Pending warmup = new Pending();
+        warmup.path = document.getFilePath();
+        pending.put(fingerprint, warmup);
+        fingerprints.put(warmup.path, fingerprint);
+        warmup.openTask = executor.submit(() -> {
+            PdfRenderWorker renderWorker = null;
+            try {
+                renderWorker = PdfRenderWorker.open(appContext, document);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Warm-up failed for " + document.getFilePath(), e);
+            }
+            final PdfRenderWorker opened = renderWorker;
+            PageSizeTable pageSizes = opened != null
+                    ? PageSizeTable.load(PageSizeTable.cacheFile(appContext, fingerprint), opened.getPageCount())
+                    : null;
+            mainHandler.post(() -> onOpened(appContext, fingerprint, warmup, opened, pageSizes, width));
+        });
+    }
+
+    /**
+     * Abandon the warm-up of the document (the touch became a scroll). Sessions a
+     * viewer parked are left alone.
+     */
+    public static void cancel(Context context, Document document) {
+        if (document.getType() != Document.DocumentType.PDF) return;
+
+        String path = document.getFilePath();
+        if (resolving.remove(path)) {
+            if (resolving.isEmpty()) {
+                claimed.clear();
+            }
+            return;
+        }
+        String fingerprint = fingerprints.remove(path);
+        if (fingerprint == null) return;
+
+        Pending warmup = pending.remove(fingerprint);
+        if (warmup != null) {
+            warmup.finished = true;
+            // A task cancelled before it ran never reports back, so answer a waiting viewer here
+            SessionCallback waiter = warmup.waiter;
+            warmup.waiter = null;
+            warmup.openTask.cancel(false);
+            if (warmup.firstPageTask != null) {
+                warmup.firstPageTask.cancel(true);
+            }
+            if (warmup.renderWorker != null) {
+                warmup.renderWorker.close();
+            }
+            if (waiter != null) {
+                waiter.onSession(null);
+            }
+            return;
+        }
+
+        if (parkedByWarmup.remove(fingerprint)) {
+            PdfSessionCache.Session session = PdfSessionCache.getInstance(context).take(fingerprint);
+            if (session != null) {
+                session.renderWorker.close();
+            }
+        }
+    }
+
+    /**
+     * Hand the viewer an open session for the document: a parked one right away, or
+     * the result of a warm-up still in progress once its renderers are open. The
+     * callback runs on the main thread, with null if nothing is open.
+     */
+    static void takeSession(Context context, String fingerprint, SessionCallback callback) {
+        Pending warmup = pending.get(fingerprint);
+        if (warmup != null) {
+            if (warmup.renderWorker != null) {
+                // Open already; don't make the viewer wait for the first page too
+                handOver(fingerprint, warmup, callback);
+            } else {
+                warmup.waiter = callback;
+            }
+            return;
+        }
+
+        if (parkedByWarmup.remove(fingerprint)) {
+            fingerprints.values().remove(fingerprint);
+        }
+        if (!resolving.isEmpty()) {
+            // One of those may be this document; it mustn't open a second copy
+            claimed.add(fingerprint);
+        }
+        callback.onSession(PdfSessionCache.getInstance(context).take(fingerprint));
+    }
+
+    private static void onOpened(Context context, String fingerprint, Pending warmup,
+                                 PdfRenderWorker renderWorker, PageSizeTable pageSizes, int width) {
+        if (warmup.finished || renderWorker == null) {
+            // Cancelled meanwhile, or the file couldn't be opened
+            if (renderWorker != null) {
+                renderWorker.close();
+            }
+            if (!warmup.finished) {
+                pending.remove(fingerprint);
+                fingerprints.remove(warmup.path);
+            }
+            if (warmup.waiter != null) {
+                warmup.waiter.onSession(null);
+            }
+            return;
+        }
+
+        warmup.renderWorker = renderWorker;
+        warmup.pageSizes = pageSizes;
+        if (warmup.waiter != null) {
+            handOver(fingerprint, warmup, warmup.waiter);
+            return;
+        }
+
+        warmup.firstPageTask = renderWorker.render(0, width, new PdfRenderWorker.Callback() {
+            @Override
+            public void onPageRendered(int pageIndex, Bitmap bitmap) {
+                if (warmup.finished) {
+                    // Handed over meanwhile: the viewer's pool can reuse the bitmap
+                    renderWorker.getBitmapPool().release(bitmap);
+                    return;
+                }
+                warmup.finished = true;
+                pending.remove(fingerprint);
+                parkedByWarmup.add(fingerprint);
+                PdfSessionCache.getInstance(context).park(fingerprint,
+                        new PdfSessionCache.Session(renderWorker, pageSizes, bitmap));
+            }
+
+            @Override
+            public void onRenderFailed(int pageIndex) {
+                // Handed over meanwhile: the viewer owns the renderers now
+                if (warmup.finished) return;
+                // A document whose first page fails isn't worth keeping open; a later
+                // warm-up or the viewer tries again from scratch
+                warmup.finished = true;
+                pending.remove(fingerprint);
+                fingerprints.remove(warmup.path);
+                renderWorker.close();
+                SessionCallback waiter = warmup.waiter;
+                warmup.waiter = null;
+                if (waiter != null) {
+                    waiter.onSession(null);
+                }
+            }
+        });
+    }
+
+    private static void handOver(String fingerprint, Pending warmup, SessionCallback callback) {
+        warmup.finished = true;
+        pending.remove(fingerprint);
+        fingerprints.remove(warmup.path);
+        callback.onSession(new PdfSessionCache.Session(warmup.renderWorker, warmup.pageSizes, null));
+    }
+}
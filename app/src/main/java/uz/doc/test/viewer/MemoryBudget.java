@@ -0,0 +1,73 @@
+package uz.doc.test.viewer;
+
+import android.app.ActivityManager;
+import android.content.Context;
+
+/**
+ * The viewer's one memory budget: the share of the app's heap class each bitmap
+ * tier may use, kept in one place so the tiers add up to a known total.
+ *
+ * Page cache, zoom tiles and parked sessions 1/8 each; bitmap pool, compressed
+ * pages and Glide 1/16 each; thumbnails and decoded slide pictures 1/32 each.
+ * That is 5/8 of the heap class, leaving the rest to the UI, the renderers and
+ * decoding. Parked sessions only hold memory while no viewer is open.
+ */
+final class MemoryBudget {
+    private static final int PAGE_CACHE_FRACTION = 8;
+    private static final int TILE_FRACTION = 8;
+    private static final int SESSION_FRACTION = 8;
+    private static final int BITMAP_POOL_FRACTION = 16;
+    private static final int COMPRESSED_FRACTION = 16;
+    private static final int GLIDE_FRACTION = 16;
+    private static final int THUMBNAIL_FRACTION = 32;
+    private static final int SLIDE_PICTURE_FRACTION = 32;
+
+    private MemoryBudget() {
+    }
+
+    /** Rendered pages in {@link PageBitmapCache}. */
+    static int pageCacheBytes(Context context) {
+        return share(context, PAGE_CACHE_FRACTION);
+    }
+
+    /** Zoom tiles in {@link PdfTileManager}. */
+    static int tileBytes(Context context) {
+        return share(context, TILE_FRACTION);
+    }
+
+    /** First pages of the documents parked in {@link PdfSessionCache}. */
+    static int sessionBytes(Context context) {
+        return share(context, SESSION_FRACTION);
+    }
+
+    /** Free bitmaps of one {@link PdfRenderWorker}'s {@link BitmapPool}. */
+    static int bitmapPoolBytes(Context context) {
+        return share(context, BITMAP_POOL_FRACTION);
+    }
+
+    /** Pages evicted into {@link CompressedPageCache}. */
+    static int compressedPageBytes(Context context) {
+        return share(context, COMPRESSED_FRACTION);
+    }
+
+    /** Glide's memory cache, for slide list pictures. */
+    static int glideBytes(Context context) {
+        return share(context, GLIDE_FRACTION);
+    }
+
+    /** Page thumbnails shown while pages render. */
+    static int thumbnailBytes(Context context) {
+        return share(context, THUMBNAIL_FRACTION);
+    }
+
+    /** Decoded pictures, split between the {@link SlideRenderer}s of a deck. */
+    static int slidePictureBytes(Context context) {
+        return share(context, SLIDE_PICTURE_FRACTION);
+    }
+
+    private static int share(Context context, int heapFraction) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassMb = activityManager.getMemoryClass();
+        return memoryClassMb * 1024 * 1024 / heapFraction;
+    }
+}
@@ -0,0 +1,61 @@
+package uz.doc.test.viewer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Rendered page bitmaps keyed by page index, bounded by bytes rather than entries,
+ * so memory use doesn't grow with document length.
+ */
+class PageBitmapCache extends LruCache<Integer, Bitmap> {
+    private static final String TAG = "PageBitmapCache";
+
+    interface EvictionListener {
+        void onBitmapEvicted(int pageIndex, Bitmap bitmap);
+    }
+
+    private EvictionListener evictionListener;
+
+    PageBitmapCache(Context context) {
+        super(MemoryBudget.pageCacheBytes(context));
+    }
+
+    void setEvictionListener(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    @Override
+    protected int sizeOf(Integer pageIndex, Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    @Override
+    protected void entryRemoved(boolean evicted, Integer pageIndex, Bitmap oldValue, Bitmap newValue) {
+        if (evictionListener != null && oldValue != newValue) {
+            evictionListener.onBitmapEvicted(pageIndex, oldValue);
+        }
+    }
+
+    /**
+     * React to ComponentCallbacks2.onTrimMemory: halve the cache while the app is
+     * visible but memory is getting tight, drop everything once it is backgrounded.
+     */
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimToSize(maxSize() / 2);
+        }
+        Log.d(TAG, "Trimmed (level " + level + "): " + stats());
+    }
+
+    String stats() {
+        return "size=" + size() / 1024 + "KB/" + maxSize() / 1024 + "KB"
+                + " hits=" + hitCount()
+                + " misses=" + missCount()
+                + " evictions=" + evictionCount();
+    }
+}
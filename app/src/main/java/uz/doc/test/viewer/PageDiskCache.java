@@ -0,0 +1,225 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rendered pages kept on disk as WebP in getCacheDir(), so reopening a document
+ * shows its pages without a PdfRenderer round-trip.
+ *
+ * Entries are keyed by document fingerprint + page + render width + render mode.
+ * The directory is bounded by bytes and trimmed least recently used first, using
+ * file modification times that are bumped on every hit. Writes are compressed on
+ * a background thread from a copy in a pooled bitmap, so caching allocates nothing
+ * once the pool is warm.
+ */
+class PageDiskCache {
+    private static final String TAG = "PageDiskCache";
+    private static final String DIR_NAME = "rendered_pages";
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+    // Trim a little below the budget so a full cache doesn't trim on every write
+    private static final long TRIM_TO_BYTES = MAX_BYTES * 9 / 10;
+    private static final int WEBP_QUALITY = 90;
+    // Pages waiting to be encoded, each holding a pooled bitmap; more are skipped
+    private static final int MAX_PENDING_WRITES = 2;
+
+    private final File dir;
+    private final String fingerprint;
+    private final int renderMode;
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    // Size of the directory; only touched on the write thread, -1 until first measured
+    private long totalBytes = -1;
+
+    PageDiskCache(Context context, String fingerprint, int renderMode) {
+        this.dir = new File(context.getCacheDir(), DIR_NAME);
+        this.fingerprint = fingerprint;
+        this.renderMode = renderMode;
+    }
+
+    /**
+     * Decode a cached page into a bitmap from the pool, or return null if the page
+     * isn't cached at this width. Blocking: call from a background thread.
+     */
+    Bitmap get(int pageIndex, int width, BitmapPool bitmapPool) {
+        File file = fileFor(pageIndex, width);
+        if (!file.exists()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth != width || options.outHeight <= 0) {
+            misses.incrementAndGet();
+            file.delete();
+            return null;
+        }
+
+        Bitmap target = bitmapPool.obtain(options.outWidth, options.outHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = target;
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        } catch (IllegalArgumentException e) {
+            // Pooled bitmap not reusable for this image
+            bitmap = null;
+        }
+        if (bitmap == null) {
+            Log.w(TAG, "Unreadable cached page, dropping: " + file);
+            bitmapPool.release(target);
+            misses.incrementAndGet();
+            file.delete();
+            return null;
+        }
+
+        file.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        return bitmap;
+    }
+
+    /**
+     * Queue the page for writing unless it is already cached. The pixels are copied
+     * into a bitmap from the pool before this returns, so the caller may reuse the
+     * bitmap right away; the copy goes back to the pool once written. Skipped while
+     * earlier writes are still queued (fast scrolling); the page is cached the next
+     * time it is rendered instead.
+     */
+    void put(int pageIndex, int width, Bitmap bitmap, BitmapPool bitmapPool) {
+        File file = fileFor(pageIndex, width);
+        if (file.exists()) return;
+        if (pendingWrites.incrementAndGet() > MAX_PENDING_WRITES) {
+            pendingWrites.decrementAndGet();
+            return;
+        }
+
+        Bitmap copy = bitmapPool.obtain(bitmap.getWidth(), bitmap.getHeight());
+        new Canvas(copy).drawBitmap(bitmap, 0, 0, null);
+        try {
+            writeExecutor.execute(() -> {
+                try {
+                    write(file, copy);
+                } finally {
+                    pendingWrites.decrementAndGet();
+                    bitmapPool.release(copy);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed along with the worker
+            pendingWrites.decrementAndGet();
+            bitmapPool.release(copy);
+        }
+    }
+
+    /**
+     * Stop accepting writes; writes already queued still complete.
+     */
+    void close() {
+        writeExecutor.shutdown();
+    }
+
+    String stats() {
+        return "diskHits=" + hits.get()
+                + " diskMisses=" + misses.get()
+                + " diskWrites=" + writes.get();
+    }
+
+    private void write(File file, Bitmap bitmap) {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Cannot create page cache directory " + dir);
+            return;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            if (!bitmap.compress(webpFormat(), WEBP_QUALITY, out)) {
+                throw new IOException("WebP encoding failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error caching page " + file.getName(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+
+        writes.incrementAndGet();
+        if (totalBytes < 0) {
+            totalBytes = directorySize();
+        } else {
+            totalBytes += file.length();
+        }
+        if (totalBytes > MAX_BYTES) {
+            trim();
+        }
+    }
+
+    private void trim() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+
+        // Oldest first; mtime is refreshed on every hit
+        long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastUsed[a], lastUsed[b]));
+
+        long size = directorySize();
+        for (int i = 0; i < order.length && size > TRIM_TO_BYTES; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+        totalBytes = size;
+    }
+
+    private long directorySize() {
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private File fileFor(int pageIndex, int width) {
+        return new File(dir, fingerprint + "_" + pageIndex + "_" + width + "_" + renderMode + ".webp");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+}
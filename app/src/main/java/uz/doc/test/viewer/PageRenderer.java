@@ -0,0 +1,36 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+
+import java.io.Closeable;
+
+/**
+ * A document that can rasterize its pages: a PDF ({@link PdfPageRenderer}) or a
+ * presentation ({@link SlideRenderer}). Like PdfRenderer, one instance is used by
+ * one thread at a time with a single page open.
+ */
+interface PageRenderer extends Closeable {
+
+    /**
+     * An open page. Sizes are in points.
+     */
+    interface Page extends AutoCloseable {
+        int getWidth();
+
+        int getHeight();
+
+        /**
+         * Draw the page into the bitmap through transform (points to bitmap pixels),
+         * or scaled to fill the bitmap when transform is null.
+         */
+        void render(Bitmap bitmap, Matrix transform);
+
+        @Override
+        void close();
+    }
+
+    int getPageCount();
+
+    Page openPage(int index);
+}
@@ -0,0 +1,125 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Sizes (in PDF points) of every page of a document, plus prefix sums of the
+ * page aspect ratios so the vertical offset of any page is an O(1) lookup.
+ * Persisted per document fingerprint so reopening a document skips the measuring pass.
+ */
+final class PageSizeTable {
+    private static final String TAG = "PageSizeTable";
+    private static final int MAGIC = 0x50535A54; // "PSZT"
+    private static final int FORMAT_VERSION = 1;
+
+    private final int[] widths;
+    private final int[] heights;
+    // aspectPrefix[i] = sum of height/width of pages 0..i-1
+    private final double[] aspectPrefix;
+
+    PageSizeTable(int[] widths, int[] heights) {
+        this.widths = widths;
+        this.heights = heights;
+        this.aspectPrefix = new double[widths.length + 1];
+        for (int i = 0; i < widths.length; i++) {
+            // Summed in double: float ratios drift by pixels over thousands of pages
+            double aspect = widths[i] > 0 ? (double) heights[i] / widths[i] : 0;
+            aspectPrefix[i + 1] = aspectPrefix[i] + aspect;
+        }
+    }
+
+    int getPageCount() {
+        return widths.length;
+    }
+
+    int getWidth(int pageIndex) {
+        return widths[pageIndex];
+    }
+
+    int getHeight(int pageIndex) {
+        return heights[pageIndex];
+    }
+
+    /**
+     * Page height / page width
+     */
+    float getAspectRatio(int pageIndex) {
+        return widths[pageIndex] > 0 ? (float) heights[pageIndex] / widths[pageIndex] : 0;
+    }
+
+    /**
+     * Top of a page when every page is laid out at the given width with a fixed
+     * vertical padding around it.
+     */
+    int getPageTop(int pageIndex, int pageWidth, int verticalPadding) {
+        return (int) Math.round(aspectPrefix[pageIndex] * pageWidth) + verticalPadding * pageIndex;
+    }
+
+    int getTotalHeight(int pageWidth, int verticalPadding) {
+        return getPageTop(widths.length, pageWidth, verticalPadding);
+    }
+
+    /**
+     * Where the table of the document with this fingerprint is kept.
+     */
+    static File cacheFile(Context context, String fingerprint) {
+        return new File(new File(context.getCacheDir(), "page_sizes"), fingerprint);
+    }
+
+    static PageSizeTable load(File file, int expectedPageCount) {
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            int count = in.readInt();
+            if (count != expectedPageCount) return null;
+
+            int[] widths = new int[count];
+            int[] heights = new int[count];
+            for (int i = 0; i < count; i++) {
+                widths[i] = in.readInt();
+                heights[i] = in.readInt();
+            }
+            return new PageSizeTable(widths, heights);
+        } catch (IOException e) {
+            Log.w(TAG, "Page size table unreadable: " + file, e);
+            return null;
+        }
+    }
+
+    void save(File file) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(widths.length);
+            for (int i = 0; i < widths.length; i++) {
+                out.writeInt(widths[i]);
+                out.writeInt(heights[i]);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error saving page size table", e);
+            tmp.delete();
+            return;
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A rectangular region of a page laid out at a given width, in that layout's pixels.
+ * Used as the cache key for zoomed tile bitmaps.
+ */
+final class PageTile {
+    final int pageIndex;
+    final int pageWidth;
+    final Rect bounds;
+
+    PageTile(int pageIndex, int pageWidth, Rect bounds) {
+        this.pageIndex = pageIndex;
+        this.pageWidth = pageWidth;
+        this.bounds = bounds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PageTile)) return false;
+        PageTile other = (PageTile) o;
+        return pageIndex == other.pageIndex
+                && pageWidth == other.pageWidth
+                && bounds.equals(other.bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = pageIndex;
+        result = 31 * result + pageWidth;
+        result = 31 * result + bounds.hashCode();
+        return result;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PageTile{page=" + pageIndex + ", width=" + pageWidth + ", bounds=" + bounds.toShortString() + "}";
+    }
+}
@@ -0,0 +1,64 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Vertical page list whose scrollbar and jump offsets come from the page size table
+ * instead of LinearLayoutManager's estimate from the currently attached children,
+ * so the scrollbar is stable and accurate for documents with mixed page sizes.
+ */
+class PdfLayoutManager extends LinearLayoutManager {
+
+    private PageSizeTable pageSizes;
+
+    PdfLayoutManager(Context context) {
+        super(context);
+    }
+
+    void setPageSizes(PageSizeTable pageSizes) {
+        this.pageSizes = pageSizes;
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(RecyclerView.State state) {
+        if (!canUsePageSizes(state)) return super.computeVerticalScrollOffset(state);
+
+        int first = findFirstVisibleItemPosition();
+        View firstView = findViewByPosition(first);
+        if (firstView == null) return super.computeVerticalScrollOffset(state);
+
+        int offsetInPage = getPaddingTop() - getDecoratedTop(firstView);
+        return pageSizes.getPageTop(first, pageWidth(firstView), verticalPadding(firstView)) + offsetInPage;
+    }
+
+    @Override
+    public int computeVerticalScrollRange(RecyclerView.State state) {
+        if (!canUsePageSizes(state)) return super.computeVerticalScrollRange(state);
+
+        View child = getChildAt(0);
+        if (child == null) return super.computeVerticalScrollRange(state);
+        return pageSizes.getTotalHeight(pageWidth(child), verticalPadding(child));
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(RecyclerView.State state) {
+        if (!canUsePageSizes(state)) return super.computeVerticalScrollExtent(state);
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+
+    private boolean canUsePageSizes(RecyclerView.State state) {
+        return pageSizes != null && getChildCount() > 0 && state.getItemCount() == pageSizes.getPageCount();
+    }
+
+    private static int pageWidth(View itemView) {
+        return itemView.getWidth() - itemView.getPaddingLeft() - itemView.getPaddingRight();
+    }
+
+    private static int verticalPadding(View itemView) {
+        return itemView.getPaddingTop() + itemView.getPaddingBottom();
+    }
+}
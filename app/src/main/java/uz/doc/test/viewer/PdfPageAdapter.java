@@ -1,73 +1,449 @@
 package uz.doc.test.viewer;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.pdf.PdfRenderer;
 import android.util.DisplayMetrics;
 import android.util.LruCache;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import uz.doc.test.R;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+
 class PdfPageAdapter extends RecyclerView.Adapter<PdfPageAdapter.PageViewHolder> {
+    private static final int THUMBNAIL_SCALE = 4;
 
-    private final PdfRenderer pdfRenderer;
+    private final PdfRenderWorker renderWorker;
     private final LayoutInflater inflater;
-    private final LruCache<Integer, Bitmap> bitmapCache;
+    private final PageBitmapCache bitmapCache;
+    private final BitmapPool bitmapPool;
+    private final PdfTileManager tileManager;
+    // Small copies of rendered pages, shown instead of rendering while flinging
+    private final LruCache<Integer, Bitmap> thumbnailCache;
+    private final CompressedPageCache compressedCache;
+    // Evicted bitmaps being compressed; they must not go back to the pool until done
+    private final Set<Bitmap> compressing = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean trimming;
+    // Bitmaps evicted from the cache while still shown; pooled once their view lets go
+    private final Set<Bitmap> evictedWhileBound = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Every holder this adapter created (a screenful plus the recycler pool)
+    private final List<PageViewHolder> createdHolders = new ArrayList<>();
     private final int targetWidth;
+    // Height/width per page, from the page size table or learned from rendered bitmaps (0 = unknown)
+    private final float[] pageAspectRatios;
+    private float lastAspectRatio;
+    private int nextRequestToken;
+    // Renders queued ahead of the viewport, by page index
+    private final SparseArray<RenderTask> prefetches = new SparseArray<>();
+    // Prefetched pages that are cached but haven't been shown yet
+    private final Set<Integer> prefetchedUnseen = new HashSet<>();
+    private int prefetchesIssued;
+    private int prefetchHits;
+    private int prefetchesCancelled;
+    private int prefetchesWasted;
+    private boolean fastScrolling;
+    private int rendersDeferred;
+    // Set when the viewer goes away; renders still in flight are dropped on arrival
+    private boolean closed;
 
-    PdfPageAdapter(Context context, PdfRenderer pdfRenderer) {
-        this.pdfRenderer = pdfRenderer;
+    PdfPageAdapter(Context context, PdfRenderWorker renderWorker) {
+        this.renderWorker = renderWorker;
         this.inflater = LayoutInflater.from(context);
         DisplayMetrics metrics = context.getResources().getDisplayMetrics();
         this.targetWidth = metrics.widthPixels;
-        int cacheSize = Math.max(4, pdfRenderer.getPageCount());
-        this.bitmapCache = new LruCache<>(cacheSize);
+        this.bitmapCache = new PageBitmapCache(context);
+        this.bitmapPool = renderWorker.getBitmapPool();
+        this.bitmapCache.setEvictionListener(this::onBitmapEvicted);
+        this.pageAspectRatios = new float[renderWorker.getPageCount()];
+        this.tileManager = new PdfTileManager(context, renderWorker, targetWidth);
+        this.thumbnailCache = new LruCache<Integer, Bitmap>(MemoryBudget.thumbnailBytes(context)) {
+            @Override
+            protected int sizeOf(Integer pageIndex, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+        renderWorker.setThumbnailCache(thumbnailCache, THUMBNAIL_SCALE);
+        this.compressedCache = new CompressedPageCache(context);
+        renderWorker.setCompressedCache(compressedCache);
     }
 
     @NonNull
     @Override
     public PageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = inflater.inflate(R.layout.item_pdf_page, parent, false);
-        return new PageViewHolder(view);
+        PageViewHolder holder = new PageViewHolder(view);
+        createdHolders.add(holder);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull PageViewHolder holder, int position) {
+        holder.cancelPendingRender();
+        tileManager.clearTiles(holder.pageImage);
+
         Bitmap cached = bitmapCache.get(position);
         if (cached != null) {
-            holder.pageImage.setImageBitmap(cached);
+            if (prefetchedUnseen.remove(position)) {
+                prefetchHits++;
+            }
+            showBitmap(holder, cached);
+            return;
+        }
+
+        // Placeholder with the page's (or the previous page's) proportions until the bitmap arrives
+        float aspectRatio = pageAspectRatios[position] > 0 ? pageAspectRatios[position] : lastAspectRatio;
+        holder.pageImage.setAspectRatio(aspectRatio);
+        clearBitmap(holder);
+
+        if (fastScrolling) {
+            // Flung past in a few frames: show a thumbnail if there is one and
+            // render only if the page is still on screen when the scroll settles
+            Bitmap thumbnail = thumbnailCache.get(position);
+            if (thumbnail != null) {
+                holder.pageImage.setImageBitmap(thumbnail);
+            }
+            holder.deferred = true;
+            rendersDeferred++;
             return;
         }
+        requestRender(holder, position);
+    }
+
+    private void requestRender(PageViewHolder holder, int position) {
+        RenderTask prefetch = prefetches.get(position);
+        if (prefetch != null) {
+            if (prefetch.hasStarted()) {
+                // Already on the render thread: wait for it instead of rendering twice
+                holder.awaitingPrefetch = true;
+                return;
+            }
+            // Still queued at prefetch priority: replace it with a visible render
+            prefetch.cancel(false);
+            prefetches.remove(position);
+        }
+
+        final int token = ++nextRequestToken;
+        holder.requestToken = token;
+        holder.pendingRender = renderWorker.render(position, targetWidth, (pageIndex, bitmap) -> {
+            boolean current = holder.requestToken == token;
+            if (closed || (!current && bitmapCache.get(pageIndex) != null)) {
+                // Nobody to show it to, or the page was rendered again meanwhile
+                bitmapPool.release(bitmap);
+                return;
+            }
+            bitmapCache.put(pageIndex, bitmap);
+            float ratio = (float) bitmap.getHeight() / bitmap.getWidth();
+            pageAspectRatios[pageIndex] = ratio;
+            lastAspectRatio = ratio;
+
+            // The holder may have been recycled for another page in the meantime
+            if (!current) return;
+            holder.pendingRender = null;
+            showBitmap(holder, bitmap);
+        });
+    }
+
+    @Override
+    public void onViewAttachedToWindow(@NonNull PageViewHolder holder) {
+        // Views cached by the RecyclerView come back without a rebind
+        int position = holder.getBindingAdapterPosition();
+        if (holder.deferred && !fastScrolling && position != RecyclerView.NO_POSITION) {
+            holder.deferred = false;
+            requestRender(holder, position);
+        }
+    }
 
-        PdfRenderer.Page page = pdfRenderer.openPage(position);
-        int width = targetWidth;
-        int height = Math.round((float) width / page.getWidth() * page.getHeight());
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
-        page.close();
+    @Override
+    public void onViewRecycled(@NonNull PageViewHolder holder) {
+        holder.cancelPendingRender();
+        tileManager.clearTiles(holder.pageImage);
+        clearBitmap(holder);
+    }
 
-        bitmapCache.put(position, bitmap);
+    private void showBitmap(PageViewHolder holder, Bitmap bitmap) {
+        if (holder.boundBitmap == bitmap) return;
+        clearBitmap(holder);
+        holder.boundBitmap = bitmap;
+        holder.pageImage.setAspectRatio((float) bitmap.getHeight() / bitmap.getWidth());
         holder.pageImage.setImageBitmap(bitmap);
     }
 
+    private void clearBitmap(PageViewHolder holder) {
+        Bitmap previous = holder.boundBitmap;
+        holder.boundBitmap = null;
+        holder.pageImage.setImageDrawable(null);
+        if (previous != null && evictedWhileBound.remove(previous)) {
+            bitmapPool.release(previous);
+        }
+    }
+
+    /**
+     * While fast scrolling, newly bound pages get a thumbnail or placeholder
+     * instead of a render. When it ends, pages left on screen are rendered.
+     */
+    void setFastScrolling(boolean fastScrolling) {
+        if (this.fastScrolling == fastScrolling) return;
+        this.fastScrolling = fastScrolling;
+        if (fastScrolling) return;
+
+        for (PageViewHolder holder : createdHolders) {
+            int position = holder.getBindingAdapterPosition();
+            if (holder.deferred && position != RecyclerView.NO_POSITION && holder.itemView.isAttachedToWindow()) {
+                holder.deferred = false;
+                requestRender(holder, position);
+            }
+        }
+    }
+
+    /**
+     * Render the given pages ahead of need, nearest first, and cancel earlier
+     * prefetches that are no longer in the list. Pages already cached or bound
+     * to a view are skipped.
+     */
+    void prefetch(int[] pages) {
+        Set<Integer> wanted = new HashSet<>();
+        for (int page : pages) {
+            wanted.add(page);
+        }
+        for (int i = prefetches.size() - 1; i >= 0; i--) {
+            int page = prefetches.keyAt(i);
+            // A view showing the page waits for its prefetch, so keep that one
+            if (!wanted.contains(page) && !isBound(page)) {
+                RenderTask task = prefetches.valueAt(i);
+                if (task.hasStarted()) {
+                    prefetchesWasted++;
+                }
+                task.cancel(true);
+                prefetchesCancelled++;
+                prefetches.removeAt(i);
+            }
+        }
+
+        for (int i = 0; i < pages.length; i++) {
+            int page = pages[i];
+            if (page < 0 || page >= pageAspectRatios.length) continue;
+            if (prefetches.get(page) != null || bitmapCache.get(page) != null || isBound(page)) continue;
+
+            prefetchesIssued++;
+            prefetches.put(page, renderWorker.render(page, targetWidth, RenderTask.PRIORITY_PREFETCH + i,
+                    new PdfRenderWorker.Callback() {
+                        @Override
+                        public void onPageRendered(int pageIndex, Bitmap bitmap) {
+                            onPagePrefetched(pageIndex, bitmap);
+                        }
+
+                        @Override
+                        public void onRenderFailed(int pageIndex) {
+                            onPrefetchFailed(pageIndex);
+                        }
+                    }));
+        }
+    }
+
+    private void onPagePrefetched(int pageIndex, Bitmap bitmap) {
+        prefetches.remove(pageIndex);
+        if (closed) {
+            bitmapPool.release(bitmap);
+            return;
+        }
+        bitmapCache.put(pageIndex, bitmap);
+        float ratio = (float) bitmap.getHeight() / bitmap.getWidth();
+        pageAspectRatios[pageIndex] = ratio;
+
+        for (PageViewHolder holder : createdHolders) {
+            if (holder.awaitingPrefetch && holder.getBindingAdapterPosition() == pageIndex) {
+                holder.awaitingPrefetch = false;
+                prefetchHits++;
+                showBitmap(holder, bitmap);
+                return;
+            }
+        }
+        prefetchedUnseen.add(pageIndex);
+    }
+
+    /**
+     * A view waiting for this prefetch asks for a render of its own instead.
+     */
+    private void onPrefetchFailed(int pageIndex) {
+        prefetches.remove(pageIndex);
+        if (closed) return;
+        for (PageViewHolder holder : createdHolders) {
+            if (holder.awaitingPrefetch && holder.getBindingAdapterPosition() == pageIndex) {
+                holder.awaitingPrefetch = false;
+                requestRender(holder, pageIndex);
+                return;
+            }
+        }
+    }
+
+    private boolean isBound(int position) {
+        for (PageViewHolder holder : createdHolders) {
+            if (holder.getBindingAdapterPosition() == position
+                    && (holder.boundBitmap != null || holder.pendingRender != null
+                    || holder.awaitingPrefetch || holder.deferred)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onBitmapEvicted(int pageIndex, Bitmap bitmap) {
+        if (prefetchedUnseen.remove(pageIndex)) {
+            // Rendered ahead but evicted before anyone looked at it
+            prefetchesWasted++;
+        }
+        if (trimming || closed) {
+            // Memory is short or the viewer is gone: don't spend it on a compressed copy
+            releaseWhenUnbound(bitmap);
+            return;
+        }
+        compressing.add(bitmap);
+        compressedCache.put(pageIndex, bitmap, () -> {
+            compressing.remove(bitmap);
+            releaseWhenUnbound(bitmap);
+        });
+    }
+
+    private void releaseWhenUnbound(Bitmap bitmap) {
+        if (isBound(bitmap)) {
+            evictedWhileBound.add(bitmap);
+        } else {
+            bitmapPool.release(bitmap);
+        }
+    }
+
+    private boolean isBound(Bitmap bitmap) {
+        for (PageViewHolder holder : createdHolders) {
+            if (holder.boundBitmap == bitmap) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply the measured page sizes: every placeholder gets its exact height,
+     * including pages that are already on screen.
+     */
+    void setPageSizes(PageSizeTable pageSizes) {
+        for (int i = 0; i < pageAspectRatios.length && i < pageSizes.getPageCount(); i++) {
+            pageAspectRatios[i] = pageSizes.getAspectRatio(i);
+        }
+        for (PageViewHolder holder : createdHolders) {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && pageAspectRatios[position] > 0) {
+                holder.pageImage.setAspectRatio(pageAspectRatios[position]);
+            }
+        }
+    }
+
+    /**
+     * Refresh zoom tiles for the pages currently on screen. Rendering of missing
+     * tiles can be held back (e.g. while scrolling) and requested once settled.
+     */
+    void updateTiles(boolean renderMissing) {
+        SparseArray<PdfPageView> pages = new SparseArray<>();
+        for (PageViewHolder holder : createdHolders) {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && holder.itemView.isAttachedToWindow()) {
+                pages.put(position, holder.pageImage);
+            }
+        }
+        tileManager.update(pages, renderMissing);
+    }
+
+    void trimMemory(int level) {
+        tileManager.trimMemory(level);
+        compressedCache.trimMemory(level);
+        trimming = true;
+        bitmapCache.trimMemory(level);
+        trimming = false;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            thumbnailCache.evictAll();
+        }
+        bitmapPool.trimMemory(level);
+    }
+
+    String getCacheStats() {
+        return bitmapCache.stats() + " " + compressedCache.stats() + " " + bitmapPool.stats();
+    }
+
+    /**
+     * Cached bitmap of a page, without counting as a cache hit; null if not cached.
+     */
+    Bitmap peekCachedPage(int pageIndex) {
+        return bitmapCache.snapshot().get(pageIndex);
+    }
+
+    /**
+     * Seed the cache with a page rendered elsewhere (e.g. kept from a previous viewer).
+     * The bitmap must be mutable and at the adapter's render width.
+     */
+    void putCachedPage(int pageIndex, Bitmap bitmap) {
+        if (bitmap.getWidth() != targetWidth) return;
+        bitmapCache.put(pageIndex, bitmap);
+        pageAspectRatios[pageIndex] = (float) bitmap.getHeight() / bitmap.getWidth();
+    }
+
+    /**
+     * Stop compressing evicted pages; the viewer is going away. Renders that
+     * finish later only return their bitmaps to the pool.
+     */
+    void close() {
+        closed = true;
+        compressedCache.close();
+    }
+
+    String getPrefetchStats() {
+        int hitRate = prefetchesIssued == 0 ? 0 : prefetchHits * 100 / prefetchesIssued;
+        return "prefetched=" + prefetchesIssued
+                + " hits=" + prefetchHits
+                + " hitRate=" + hitRate + "%"
+                + " cancelled=" + prefetchesCancelled
+                + " wasted=" + prefetchesWasted
+                + " deferredWhileFlinging=" + rendersDeferred;
+    }
+
     @Override
     public int getItemCount() {
-        return pdfRenderer.getPageCount();
+        return renderWorker.getPageCount();
     }
 
     static class PageViewHolder extends RecyclerView.ViewHolder {
-        private final ImageView pageImage;
+        private final PdfPageView pageImage;
+        private Future<?> pendingRender;
+        private int requestToken;
+        private Bitmap boundBitmap;
+        // Showing the page's in-flight prefetch once it lands
+        private boolean awaitingPrefetch;
+        // Bound while fast scrolling; rendered when the scroll settles
+        private boolean deferred;
 
         PageViewHolder(@NonNull View itemView) {
             super(itemView);
             pageImage = itemView.findViewById(R.id.pdf_page_image);
         }
+
+        void cancelPendingRender() {
+            // Invalidate the token too: a render that already finished may still be posting
+            requestToken = 0;
+            awaitingPrefetch = false;
+            deferred = false;
+            if (pendingRender != null) {
+                pendingRender.cancel(true);
+                pendingRender = null;
+            }
+        }
     }
 }
@@ -0,0 +1,63 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.pdf.PdfRenderer;
+import android.os.ParcelFileDescriptor;
+
+import java.io.IOException;
+
+/**
+ * {@link PageRenderer} over a PdfRenderer, closing its descriptor along with it.
+ */
+final class PdfPageRenderer implements PageRenderer {
+    static final int RENDER_MODE = PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY;
+
+    private final PdfRenderer renderer;
+    private final ParcelFileDescriptor fileDescriptor;
+
+    PdfPageRenderer(ParcelFileDescriptor fileDescriptor) throws IOException {
+        this.renderer = new PdfRenderer(fileDescriptor);
+        this.fileDescriptor = fileDescriptor;
+    }
+
+    @Override
+    public int getPageCount() {
+        return renderer.getPageCount();
+    }
+
+    @Override
+    public Page openPage(int index) {
+        PdfRenderer.Page page = renderer.openPage(index);
+        return new Page() {
+            @Override
+            public int getWidth() {
+                return page.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return page.getHeight();
+            }
+
+            @Override
+            public void render(Bitmap bitmap, Matrix transform) {
+                page.render(bitmap, null, transform, RENDER_MODE);
+            }
+
+            @Override
+            public void close() {
+                page.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            renderer.close();
+        } finally {
+            fileDescriptor.close();
+        }
+    }
+}
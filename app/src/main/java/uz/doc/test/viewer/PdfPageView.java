@@ -0,0 +1,72 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+import androidx.appcompat.widget.AppCompatImageView;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Page image that sizes itself from the page aspect ratio, so a page keeps
+ * its final height while its bitmap is still rendering. When zoomed, sharp
+ * tiles are drawn on top of the low-resolution page preview.
+ */
+public class PdfPageView extends AppCompatImageView {
+
+    private float aspectRatio = 1.414f; // A4 portrait until the real size is known
+    // High-resolution tiles drawn over the (upscaled) page preview while zoomed in
+    private Map<PageTile, Bitmap> tiles = Collections.emptyMap();
+
+    public PdfPageView(Context context) {
+        super(context);
+    }
+
+    public PdfPageView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public PdfPageView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    /**
+     * @param aspectRatio page height / page width
+     */
+    public void setAspectRatio(float aspectRatio) {
+        if (aspectRatio <= 0 || aspectRatio == this.aspectRatio) return;
+        this.aspectRatio = aspectRatio;
+        requestLayout();
+    }
+
+    /**
+     * Replace the zoom tiles drawn over the preview. Tiles rendered for another
+     * page width (a previous zoom level) are ignored.
+     */
+    void setTiles(Map<PageTile, Bitmap> tiles) {
+        if (tiles.isEmpty() && this.tiles.isEmpty()) return;
+        this.tiles = tiles;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        for (Map.Entry<PageTile, Bitmap> entry : tiles.entrySet()) {
+            if (entry.getKey().pageWidth == width) {
+                canvas.drawBitmap(entry.getValue(), null, entry.getKey().bounds, null);
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = Math.round(width * aspectRatio);
+        setMeasuredDimension(width, height);
+    }
+}
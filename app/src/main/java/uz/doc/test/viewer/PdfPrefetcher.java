@@ -0,0 +1,118 @@
+package uz.doc.test.viewer;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Renders pages before they scroll into view.
+ *
+ * Follows the page list's scroll direction and speed and asks the adapter for the
+ * next {@link #setPrefetchDepth prefetch depth} pages ahead and one page behind,
+ * at lower priority than on-screen pages. Pages that drop out of that window are
+ * cancelled by the adapter.
+ *
+ * Above a fling threshold the adapter is switched to fast-scrolling mode, where
+ * passing pages are not rendered at all, and prefetching pauses until the scroll
+ * slows down again.
+ */
+class PdfPrefetcher extends RecyclerView.OnScrollListener {
+    static final int DEFAULT_PREFETCH_DEPTH = 2;
+    private static final int PAGES_BEHIND = 1;
+    // Scrolling faster than this many viewport heights per second counts as a fling...
+    private static final float FAST_SCROLL_VIEWPORTS_PER_SECOND = 3f;
+    // ...until it slows below this, so a decelerating fling doesn't flip back and forth
+    private static final float SLOW_SCROLL_VIEWPORTS_PER_SECOND = 1.5f;
+
+    private final PdfPageAdapter adapter;
+    private int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+    private boolean scrollingDown = true;
+    private float velocity; // px per second, signed
+    private long lastScrollTime;
+    private boolean fastScrolling;
+
+    PdfPrefetcher(PdfPageAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * Number of pages rendered ahead of the viewport in the scroll direction; 0 disables prefetching.
+     */
+    void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = Math.max(0, prefetchDepth);
+    }
+
+    int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        long now = SystemClock.uptimeMillis();
+        if (dy != 0) {
+            scrollingDown = dy > 0;
+            long elapsed = Math.max(1, now - lastScrollTime);
+            // Smoothed, since per-frame deltas are noisy
+            velocity = (velocity + dy * 1000f / elapsed) / 2;
+        }
+        lastScrollTime = now;
+        updateFastScrolling(recyclerView);
+        schedule(recyclerView);
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            velocity = 0;
+            updateFastScrolling(recyclerView);
+            schedule(recyclerView);
+        }
+    }
+
+    private void updateFastScrolling(RecyclerView recyclerView) {
+        fastScrolling = isFastScrolling(fastScrolling, velocity, recyclerView.getHeight());
+        adapter.setFastScrolling(fastScrolling);
+    }
+
+    /**
+     * Whether scrolling at velocity (px per second) through a viewport of that height
+     * counts as a fling, given whether it counted until now.
+     */
+    static boolean isFastScrolling(boolean wasFastScrolling, float velocity, int viewportHeight) {
+        float viewportsPerSecond = Math.abs(velocity) / Math.max(1, viewportHeight);
+        return viewportsPerSecond > (wasFastScrolling
+                ? SLOW_SCROLL_VIEWPORTS_PER_SECOND
+                : FAST_SCROLL_VIEWPORTS_PER_SECOND);
+    }
+
+    private void schedule(RecyclerView recyclerView) {
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || prefetchDepth == 0 || fastScrolling) {
+            adapter.prefetch(new int[0]);
+            return;
+        }
+
+        adapter.prefetch(pagesToPrefetch(first, last, scrollingDown, prefetchDepth));
+    }
+
+    /**
+     * Pages around the visible range first..last: prefetchDepth ahead, nearest in the
+     * scroll direction first, then the page behind. May run past either end of the
+     * document; the adapter ignores those.
+     */
+    static int[] pagesToPrefetch(int first, int last, boolean scrollingDown, int prefetchDepth) {
+        int[] pages = new int[prefetchDepth + PAGES_BEHIND];
+        for (int i = 0; i < prefetchDepth; i++) {
+            pages[i] = scrollingDown ? last + 1 + i : first - 1 - i;
+        }
+        for (int i = 0; i < PAGES_BEHIND; i++) {
+            pages[prefetchDepth + i] = scrollingDown ? first - 1 - i : last + 1 + i;
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,409 @@
+package uz.doc.test.viewer;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.util.LruCache;
+
+import uz.doc.test.manager.FileManager;
+import uz.doc.test.model.Document;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders document pages off the main thread: PDF pages, or presentation slides
+ * drawn by {@link SlideRenderer}.
+ *
+ * Renderers are not thread-safe and allow a single open page, so each has its own
+ * render thread and a task borrows an idle one for its duration. Slides can be
+ * drawn by a small pool of renderers in parallel. PDFs get one renderer before
+ * Android 15: the framework PdfRenderer runs every open and render under one
+ * process-wide lock there, so more renderers would render one at a time while
+ * each held its own parsed copy of the document. Work is taken from a priority
+ * queue, so on-screen pages jump ahead of prefetches. Results are delivered on
+ * the main thread.
+ */
+class PdfRenderWorker {
+    private static final String TAG = "PdfRenderWorker";
+    private static final int MAX_RENDERERS = 4;
+    // Heap class (MB) per renderer: each holds its own parsed document plus a page in flight
+    private static final int HEAP_MB_PER_RENDERER = 64;
+
+    interface Callback {
+        void onPageRendered(int pageIndex, Bitmap bitmap);
+
+        /** The renderer threw; not called for cancelled renders */
+        default void onRenderFailed(int pageIndex) {
+        }
+    }
+
+    interface TileCallback {
+        void onTileRendered(PageTile tile, Bitmap bitmap);
+    }
+
+    interface SizesCallback {
+        void onPageSizesMeasured(PageSizeTable pageSizes);
+    }
+
+    private final List<PageRenderer> renderers;
+    private final Closeable sharedResource;
+    private final int renderMode;
+    private final BlockingQueue<PageRenderer> idleRenderers;
+    private final BitmapPool bitmapPool;
+    private final int pageCount;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile LruCache<Integer, Bitmap> thumbnailCache;
+    private volatile int thumbnailScale;
+    private volatile PageDiskCache diskCache;
+    private volatile CompressedPageCache compressedCache;
+
+    /**
+     * Render with the given renderers, one thread each. The worker takes ownership of
+     * them and of sharedResource (may be null), which is closed after them.
+     * renderMode tells this worker's disk-cached pages apart from other renderings.
+     */
+    PdfRenderWorker(List<PageRenderer> renderers, Closeable sharedResource, int renderMode, BitmapPool bitmapPool) {
+        this.renderers = renderers;
+        this.sharedResource = sharedResource;
+        this.renderMode = renderMode;
+        this.bitmapPool = bitmapPool;
+        // Read once here; getPageCount() must not touch a renderer from other threads
+        this.pageCount = renderers.get(0).getPageCount();
+        this.idleRenderers = new ArrayBlockingQueue<>(renderers.size(), false, renderers);
+
+        int threads = renderers.size();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>()) {
+            @Override
+            protected void terminated() {
+                super.terminated();
+                closeRenderers();
+            }
+        };
+    }
+
+    /**
+     * Open a document for rendering: user files directly, assets in place from the APK
+     * when stored uncompressed and extracted otherwise. Returns null if the file is missing.
+     * Blocking: the asset may need extracting.
+     */
+    static PdfRenderWorker open(Context context, Document document) throws IOException {
+        FileManager fileManager = FileManager.getInstance(context);
+        ParcelFileDescriptor descriptor;
+        boolean proxied = false;
+        if (document.isFromAssets()) {
+            descriptor = fileManager.openAssetDescriptor(document.getFilePath());
+            proxied = descriptor != null;
+            if (descriptor == null) {
+                File file = fileManager.copyAssetToInternalStorage(document.getFilePath());
+                if (file == null || !file.exists()) return null;
+                descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+            }
+        } else {
+            File file = new File(document.getFilePath());
+            if (!file.exists()) return null;
+            descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+
+        List<PageRenderer> renderers = new ArrayList<>();
+        try {
+            renderers.add(new PdfPageRenderer(descriptor));
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(descriptor);
+            throw e;
+        }
+        int rendererCount = choosePdfRendererCount(context, proxied);
+        for (int i = 1; i < rendererCount; i++) {
+            ParcelFileDescriptor dup = null;
+            try {
+                // PdfRenderer reads with pread, so dups sharing a file offset don't interfere
+                dup = descriptor.dup();
+                renderers.add(new PdfPageRenderer(dup));
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Continuing with " + renderers.size() + " renderer(s)", e);
+                closeQuietly(dup);
+                break;
+            }
+        }
+        BitmapPool bitmapPool = new BitmapPool(MemoryBudget.bitmapPoolBytes(context));
+        return new PdfRenderWorker(renderers, null, PdfPageRenderer.RENDER_MODE, bitmapPool);
+    }
+
+    /**
+     * Render the slides of a presentation. The worker takes ownership of the source,
+     * which its renderers share.
+     */
+    static PdfRenderWorker forSlides(Context context, SlideSource source) {
+        List<PageRenderer> renderers = new ArrayList<>();
+        int rendererCount = chooseRendererCount(context);
+        int pictureCacheBytes = MemoryBudget.slidePictureBytes(context) / rendererCount;
+        for (int i = 0; i < rendererCount; i++) {
+            renderers.add(new SlideRenderer(source, pictureCacheBytes));
+        }
+        BitmapPool bitmapPool = new BitmapPool(MemoryBudget.bitmapPoolBytes(context));
+        return new PdfRenderWorker(renderers, source, SlideRenderer.RENDER_MODE, bitmapPool);
+    }
+
+    /**
+     * PdfRenderer count: one unless renders can actually overlap, which needs
+     * Android 15's per-instance locking and a descriptor that isn't served by the
+     * single AssetProxy thread.
+     */
+    static int choosePdfRendererCount(Context context, boolean proxied) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.VANILLA_ICE_CREAM || proxied) return 1;
+        return chooseRendererCount(context);
+    }
+
+    /**
+     * Renderer count for this device: one per two cores, leaving room for the UI
+     * thread, capped by the heap budget and at {@value #MAX_RENDERERS}.
+     */
+    static int chooseRendererCount(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager.isLowRamDevice()) return 1;
+        int byCores = Runtime.getRuntime().availableProcessors() / 2;
+        int byMemory = activityManager.getMemoryClass() / HEAP_MB_PER_RENDERER;
+        return Math.max(1, Math.min(MAX_RENDERERS, Math.min(byCores, byMemory)));
+    }
+
+    int getRendererCount() {
+        return renderers.size();
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Key for {@link PageDiskCache}: pages rendered differently are cached apart.
+     */
+    int getRenderMode() {
+        return renderMode;
+    }
+
+    BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    /**
+     * Keep a downscaled copy (1/scale of the width) of every fully rendered page in
+     * the given cache. Thumbnails are made on the render thread, right after the page.
+     */
+    void setThumbnailCache(LruCache<Integer, Bitmap> thumbnailCache, int scale) {
+        this.thumbnailScale = scale;
+        this.thumbnailCache = thumbnailCache;
+    }
+
+    /**
+     * Queue a render of an on-screen page scaled to the given width.
+     */
+    RenderTask render(int pageIndex, int width, Callback callback) {
+        return render(pageIndex, width, RenderTask.PRIORITY_VISIBLE, callback);
+    }
+
+    /**
+     * Queue a render of the page scaled to the given width. Cancel the returned
+     * task when the result is no longer needed; a cancelled render is skipped
+     * if it hasn't started and its result is dropped otherwise.
+     */
+    RenderTask render(int pageIndex, int width, int priority, Callback callback) {
+        return submit(priority, () -> {
+            if (Thread.currentThread().isInterrupted()) return;
+
+            // Cheapest source first: compressed memory, then disk, then the renderer
+            CompressedPageCache compressed = compressedCache;
+            PageDiskCache disk = diskCache;
+            Bitmap bitmap = compressed != null ? compressed.get(pageIndex, width, bitmapPool) : null;
+            if (bitmap == null && disk != null) {
+                bitmap = disk.get(pageIndex, width, bitmapPool);
+            }
+            if (bitmap == null) {
+                PageRenderer renderer = idleRenderers.remove();
+                try (PageRenderer.Page page = renderer.openPage(pageIndex)) {
+                    int height = Math.round((float) width / page.getWidth() * page.getHeight());
+                    bitmap = bitmapPool.obtain(width, height);
+                    page.render(bitmap, null);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Failed to render page " + pageIndex, e);
+                    bitmapPool.release(bitmap);
+                    mainHandler.post(() -> callback.onRenderFailed(pageIndex));
+                    return;
+                } finally {
+                    idleRenderers.add(renderer);
+                }
+                if (disk != null) {
+                    disk.put(pageIndex, width, bitmap, bitmapPool);
+                }
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                bitmapPool.release(bitmap);
+                return;
+            }
+            storeThumbnail(pageIndex, bitmap);
+            final Bitmap result = bitmap;
+            mainHandler.post(() -> callback.onPageRendered(pageIndex, result));
+        });
+    }
+
+    /**
+     * Render one tile of a page laid out at pageWidth pixels. Only the tile's region
+     * is rasterized, through a scale + translate transform, so zoomed rendering costs
+     * memory proportional to the tile, not to the zoomed page.
+     */
+    RenderTask renderTile(PageTile tile, TileCallback callback) {
+        return submit(RenderTask.PRIORITY_VISIBLE, () -> {
+            if (Thread.currentThread().isInterrupted()) return;
+
+            Bitmap bitmap = null;
+            PageRenderer renderer = idleRenderers.remove();
+            try (PageRenderer.Page page = renderer.openPage(tile.pageIndex)) {
+                float scale = (float) tile.pageWidth / page.getWidth();
+                Matrix transform = new Matrix();
+                transform.setScale(scale, scale);
+                transform.postTranslate(-tile.bounds.left, -tile.bounds.top);
+
+                bitmap = bitmapPool.obtain(tile.bounds.width(), tile.bounds.height());
+                page.render(bitmap, transform);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to render tile " + tile, e);
+                bitmapPool.release(bitmap);
+                return;
+            } finally {
+                idleRenderers.add(renderer);
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                bitmapPool.release(bitmap);
+                return;
+            }
+            final Bitmap result = bitmap;
+            mainHandler.post(() -> callback.onTileRendered(tile, result));
+        });
+    }
+
+    /**
+     * Measure every page once (open + size + close, no rendering) and deliver the table
+     * on the main thread.
+     */
+    void measurePages(SizesCallback callback) {
+        submit(RenderTask.PRIORITY_VISIBLE, () -> {
+            int[] widths = new int[pageCount];
+            int[] heights = new int[pageCount];
+            PageRenderer renderer = idleRenderers.remove();
+            try {
+                for (int i = 0; i < pageCount; i++) {
+                    try (PageRenderer.Page page = renderer.openPage(i)) {
+                        widths[i] = page.getWidth();
+                        heights[i] = page.getHeight();
+                    }
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to measure pages", e);
+                return;
+            } finally {
+                idleRenderers.add(renderer);
+            }
+            PageSizeTable table = new PageSizeTable(widths, heights);
+            mainHandler.post(() -> callback.onPageSizesMeasured(table));
+        });
+    }
+
+    /**
+     * Close the renderers (and their descriptors or source) once already queued work
+     * has drained (when the last render thread exits).
+     */
+    void close() {
+        executor.shutdown();
+    }
+
+    private void closeRenderers() {
+        for (PageRenderer renderer : renderers) {
+            try {
+                renderer.close();
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to close renderer", e);
+            }
+        }
+        if (sharedResource != null) {
+            try {
+                sharedResource.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close document", e);
+            }
+        }
+        if (diskCache != null) {
+            diskCache.close();
+        }
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor descriptor) {
+        if (descriptor == null) return;
+        try {
+            descriptor.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close PDF file descriptor", e);
+        }
+    }
+
+    /**
+     * Serve full-page renders from the given disk cache when possible and add
+     * freshly rendered pages to it. The cache is closed along with the worker.
+     */
+    void setDiskCache(PageDiskCache diskCache) {
+        PageDiskCache previous = this.diskCache;
+        this.diskCache = diskCache;
+        if (previous != null && previous != diskCache) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Serve full-page renders from pages the adapter compressed on eviction.
+     */
+    void setCompressedCache(CompressedPageCache compressedCache) {
+        this.compressedCache = compressedCache;
+    }
+
+    /**
+     * Forget the closed viewer's caches and pooled bitmaps, keeping only the open
+     * renderers, while this worker waits to be reused.
+     */
+    void releaseViewerState() {
+        thumbnailCache = null;
+        compressedCache = null;
+        bitmapPool.clear();
+    }
+
+    private void storeThumbnail(int pageIndex, Bitmap page) {
+        LruCache<Integer, Bitmap> cache = thumbnailCache;
+        if (cache == null || cache.get(pageIndex) != null) return;
+
+        int width = Math.max(1, page.getWidth() / thumbnailScale);
+        int height = Math.max(1, page.getHeight() / thumbnailScale);
+        cache.put(pageIndex, Bitmap.createScaledBitmap(page, width, height, true));
+    }
+
+    private RenderTask submit(int priority, Runnable work) {
+        // execute(), not submit(): the queue must hold the comparable task itself
+        RenderTask task = new RenderTask(priority, work);
+        executor.execute(task);
+        return task;
+    }
+}
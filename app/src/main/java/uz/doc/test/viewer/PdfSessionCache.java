@@ -0,0 +1,143 @@
+package uz.doc.test.viewer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of recently closed PDF documents and drawn presentations, so
+ * switching back and forth between documents doesn't reopen and reparse them.
+ *
+ * When a viewer closes, its open renderers, page size table and a copy of the first
+ * page are parked here under the document fingerprint. The next viewer of the same
+ * document takes them back out instead of opening the file. At most
+ * {@value #MAX_SESSIONS} documents are kept and their first-page bitmaps share a
+ * byte budget; the least recently parked document is closed first. Everything is
+ * released under memory pressure.
+ *
+ * Main thread only.
+ */
+class PdfSessionCache implements ComponentCallbacks2 {
+    private static final String TAG = "PdfSessionCache";
+    private static final int MAX_SESSIONS = 3;
+
+    /**
+     * An open document waiting to be reused.
+     */
+    static final class Session {
+        final PdfRenderWorker renderWorker;
+        final PageSizeTable pageSizes; // may be null
+        final Bitmap firstPage; // may be null
+
+        Session(PdfRenderWorker renderWorker, PageSizeTable pageSizes, Bitmap firstPage) {
+            this.renderWorker = renderWorker;
+            this.pageSizes = pageSizes;
+            this.firstPage = firstPage;
+        }
+
+        private int byteCount() {
+            return firstPage != null ? firstPage.getAllocationByteCount() : 0;
+        }
+    }
+
+    private static PdfSessionCache instance;
+
+    // Insertion order is LRU order: a reused session is taken out and parked again later
+    private final Map<String, Session> sessions = new LinkedHashMap<>();
+    private final int maxBytes;
+    private int currentBytes;
+
+    private PdfSessionCache(Context context) {
+        this.maxBytes = MemoryBudget.sessionBytes(context);
+    }
+
+    static synchronized PdfSessionCache getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new PdfSessionCache(appContext);
+            appContext.registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Take the parked session for the document, if any. The caller owns it from here
+     * and either parks it again or closes its render worker.
+     */
+    Session take(String fingerprint) {
+        Session session = sessions.remove(fingerprint);
+        if (session != null) {
+            currentBytes -= session.byteCount();
+        }
+        return session;
+    }
+
+    boolean contains(String fingerprint) {
+        return sessions.containsKey(fingerprint);
+    }
+
+    /**
+     * Park an open document. firstPage is copied, so the caller's bitmap can go back
+     * to its pool. Older sessions are closed to stay within the limits.
+     */
+    void put(String fingerprint, PdfRenderWorker renderWorker, PageSizeTable pageSizes, Bitmap firstPage) {
+        renderWorker.releaseViewerState();
+        Bitmap firstPageCopy = null;
+        if (firstPage != null && !firstPage.isRecycled()) {
+            // Mutable, so it can join a bitmap pool once reused
+            firstPageCopy = firstPage.copy(Bitmap.Config.ARGB_8888, true);
+        }
+        park(fingerprint, new Session(renderWorker, pageSizes, firstPageCopy));
+    }
+
+    /**
+     * Park a session whose worker and first page nothing else references.
+     */
+    void park(String fingerprint, Session session) {
+        Session previous = take(fingerprint);
+        if (previous != null && previous.renderWorker != session.renderWorker) {
+            previous.renderWorker.close();
+        }
+        sessions.put(fingerprint, session);
+        currentBytes += session.byteCount();
+        trimTo(MAX_SESSIONS, maxBytes);
+    }
+
+    private void trimTo(int sessionCount, int byteCount) {
+        Iterator<Map.Entry<String, Session>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext() && (sessions.size() > sessionCount || currentBytes > byteCount)) {
+            Map.Entry<String, Session> eldest = iterator.next();
+            iterator.remove();
+            currentBytes -= eldest.getValue().byteCount();
+            eldest.getValue().renderWorker.close();
+            Log.d(TAG, "Closed parked document " + eldest.getKey());
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            trimTo(0, 0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            // Keep only the document the student most likely returns to
+            trimTo(1, maxBytes / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimTo(0, 0);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
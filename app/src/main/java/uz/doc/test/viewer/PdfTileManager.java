@@ -0,0 +1,148 @@
+package uz.doc.test.viewer;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Sharp tiles for zoomed pages.
+ *
+ * Pages are always rendered once at the base (fit-width) size; that bitmap is the
+ * low-resolution preview shown immediately at any zoom. When a page view is laid out
+ * wider than the base bitmap, only the tiles intersecting the visible part of the
+ * view are rendered at the view's real size and drawn on top of the preview.
+ * Tiles are kept while visible and dropped (back to the pool) once they scroll or
+ * zoom out of view.
+ */
+class PdfTileManager {
+    private static final int TILE_SIZE = 512;
+    // Zoomed less than this, the upscaled preview is sharp enough
+    private static final float MIN_TILED_SCALE = 1.1f;
+
+    private final PdfRenderWorker renderWorker;
+    private final BitmapPool bitmapPool;
+    private final int baseWidth;
+    private final LruCache<PageTile, Bitmap> tileCache;
+    private final Map<PageTile, Future<?>> pendingTiles = new HashMap<>();
+    private Set<PageTile> visibleTiles = Collections.emptySet();
+    private SparseArray<PdfPageView> visiblePages = new SparseArray<>();
+    private final Rect visibleRect = new Rect();
+
+    PdfTileManager(Context context, PdfRenderWorker renderWorker, int baseWidth) {
+        this.renderWorker = renderWorker;
+        this.bitmapPool = renderWorker.getBitmapPool();
+        this.baseWidth = baseWidth;
+        this.tileCache = new LruCache<PageTile, Bitmap>(MemoryBudget.tileBytes(context)) {
+            @Override
+            protected int sizeOf(PageTile key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, PageTile key, Bitmap oldValue, Bitmap newValue) {
+                // Budget evictions may still be drawn by a view, so only
+                // tiles dropped for being off screen go back to the pool
+                if (!evicted && oldValue != newValue) {
+                    bitmapPool.release(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * Recompute the visible tiles of the given pages (page index -> bound view),
+     * hand cached tiles to their views and, if renderMissing is set, queue the
+     * missing ones. Tiles no longer visible are cancelled or dropped.
+     */
+    void update(SparseArray<PdfPageView> pages, boolean renderMissing) {
+        visiblePages = pages;
+        Set<PageTile> wanted = new HashSet<>();
+
+        for (int i = 0; i < pages.size(); i++) {
+            int pageIndex = pages.keyAt(i);
+            PdfPageView view = pages.valueAt(i);
+            int width = view.getWidth();
+            if (width < baseWidth * MIN_TILED_SCALE || !view.getLocalVisibleRect(visibleRect)) {
+                view.setTiles(Collections.emptyMap());
+                continue;
+            }
+
+            Map<PageTile, Bitmap> ready = new LinkedHashMap<>();
+            int height = view.getHeight();
+            for (int top = visibleRect.top / TILE_SIZE * TILE_SIZE; top < visibleRect.bottom; top += TILE_SIZE) {
+                for (int left = visibleRect.left / TILE_SIZE * TILE_SIZE; left < visibleRect.right; left += TILE_SIZE) {
+                    Rect bounds = new Rect(left, top, Math.min(left + TILE_SIZE, width), Math.min(top + TILE_SIZE, height));
+                    PageTile tile = new PageTile(pageIndex, width, bounds);
+                    wanted.add(tile);
+
+                    Bitmap bitmap = tileCache.get(tile);
+                    if (bitmap != null) {
+                        ready.put(tile, bitmap);
+                    } else if (renderMissing && !pendingTiles.containsKey(tile)) {
+                        pendingTiles.put(tile, renderWorker.renderTile(tile, this::onTileRendered));
+                    }
+                }
+            }
+            view.setTiles(ready);
+        }
+
+        visibleTiles = wanted;
+        dropInvisibleTiles();
+    }
+
+    private void onTileRendered(PageTile tile, Bitmap bitmap) {
+        pendingTiles.remove(tile);
+        if (!visibleTiles.contains(tile)) {
+            bitmapPool.release(bitmap);
+            return;
+        }
+        tileCache.put(tile, bitmap);
+        update(visiblePages, false);
+    }
+
+    private void dropInvisibleTiles() {
+        Iterator<Map.Entry<PageTile, Future<?>>> pending = pendingTiles.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<PageTile, Future<?>> entry = pending.next();
+            if (!visibleTiles.contains(entry.getKey())) {
+                entry.getValue().cancel(true);
+                pending.remove();
+            }
+        }
+        for (PageTile tile : tileCache.snapshot().keySet()) {
+            if (!visibleTiles.contains(tile)) {
+                tileCache.remove(tile);
+            }
+        }
+    }
+
+    /**
+     * Detach tiles from a view that is about to show another page.
+     */
+    void clearTiles(PdfPageView view) {
+        view.setTiles(Collections.emptyMap());
+    }
+
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // Not visible any more: nothing is drawing the tiles
+            for (int i = 0; i < visiblePages.size(); i++) {
+                visiblePages.valueAt(i).setTiles(Collections.emptyMap());
+            }
+            visibleTiles = Collections.emptySet();
+            dropInvisibleTiles();
+        }
+    }
+}
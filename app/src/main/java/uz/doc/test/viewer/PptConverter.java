@@ -0,0 +1,297 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import org.apache.poi.hslf.usermodel.HSLFGroupShape;
+import org.apache.poi.hslf.usermodel.HSLFPictureData;
+import org.apache.poi.hslf.usermodel.HSLFPictureShape;
+import org.apache.poi.hslf.usermodel.HSLFShape;
+import org.apache.poi.hslf.usermodel.HSLFSlide;
+import org.apache.poi.hslf.usermodel.HSLFSlideShow;
+import org.apache.poi.hslf.usermodel.HSLFTextParagraph;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.sl.usermodel.PictureData;
+
+import uz.doc.test.manager.FileManager;
+import uz.doc.test.model.Document;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts legacy .ppt presentations into {@link SlidePack}s in the background, so
+ * the viewer opens them like an already parsed PPTX.
+ *
+ * HSLF reads shape positions and colors through java.awt, which Android lacks, so
+ * a converted deck holds each slide's text and pictures, without a slide size, and
+ * is listed by {@link PptxSlideAdapter}. Pictures can't be located inside the OLE2
+ * file like zip entries, so they are copied into the pack, through a scratch file
+ * so that only one is held in memory at a time.
+ *
+ * Conversions run one at a time on a background-priority thread, after import;
+ * one a viewer waits for jumps the queue. Decks that failed are not queued in the
+ * background again for the rest of the process (the viewer still retries them).
+ * Main thread only.
+ */
+public final class PptConverter {
+    private static final String TAG = "PptConverter";
+
+    interface ProgressListener {
+        void onProgress(int convertedSlides, int slideCount);
+
+        /** success is false when the presentation couldn't be converted */
+        void onFinished(boolean success);
+    }
+
+    /**
+     * Pictures written out as slides are converted, for {@link SlidePack#save}
+     * to copy into the pack.
+     */
+    private static final class PictureSpill implements Closeable {
+        final File file;
+        final Map<String, SlideSource.EntryLocation> locations = new LinkedHashMap<>();
+        private final OutputStream out;
+        private long offset;
+
+        PictureSpill(File file) throws IOException {
+            this.file = file;
+            this.out = new BufferedOutputStream(new FileOutputStream(file));
+        }
+
+        boolean contains(String path) {
+            return locations.containsKey(path);
+        }
+
+        void add(String path, byte[] data) throws IOException {
+            out.write(data);
+            locations.put(path, new SlideSource.EntryLocation(file, offset, data.length, data.length, false));
+            offset += data.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static final class Job {
+        final Document document;
+        final String fingerprint;
+        RenderTask task;
+        ProgressListener listener;
+
+        Job(Document document, String fingerprint) {
+            this.document = document;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(), work -> new Thread(() -> {
+                // Never compete with the UI or the page renderers
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                work.run();
+            }, TAG));
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Queued or running conversions, by document fingerprint
+    private static final Map<String, Job> jobs = new HashMap<>();
+    // Fingerprints of decks whose conversion failed, skipped by background conversion
+    private static final Set<String> failed = new HashSet<>();
+
+    private PptConverter() {
+    }
+
+    /**
+     * Queue the conversion of every .ppt among documents that has no pack yet.
+     */
+    public static void convertInBackground(Context context, List<Document> documents) {
+        List<Document> presentations = new ArrayList<>();
+        for (Document document : documents) {
+            if (document.getType() == Document.DocumentType.PPT) {
+                presentations.add(document);
+            }
+        }
+        if (presentations.isEmpty()) return;
+
+        // Fingerprinting stats and hashes each deck, so it runs on the converter thread too
+        Context appContext = context.getApplicationContext();
+        executor.execute(new RenderTask(RenderTask.PRIORITY_PREFETCH, () -> {
+            FileManager fileManager = FileManager.getInstance(appContext);
+            Map<String, Document> unconverted = new LinkedHashMap<>();
+            for (Document document : presentations) {
+                String fingerprint = fileManager.getFingerprint(document);
+                // Converted already; checked here so a done deck doesn't queue an extraction
+                if (!SlidePack.cacheFile(appContext, fingerprint).exists()) {
+                    unconverted.put(fingerprint, document);
+                }
+            }
+            mainHandler.post(() -> {
+                for (Map.Entry<String, Document> entry : unconverted.entrySet()) {
+                    String fingerprint = entry.getKey();
+                    if (!jobs.containsKey(fingerprint) && !failed.contains(fingerprint)) {
+                        enqueue(appContext, new Job(entry.getValue(), fingerprint), RenderTask.PRIORITY_PREFETCH);
+                    }
+                }
+            });
+        }));
+    }
+
+    /**
+     * Convert the document now, ahead of queued background work, reporting to
+     * listener on the main thread. Joins a conversion already running.
+     */
+    static void convert(Context context, Document document, String fingerprint, ProgressListener listener) {
+        Job job = jobs.get(fingerprint);
+        if (job == null) {
+            job = new Job(document, fingerprint);
+            enqueue(context.getApplicationContext(), job, RenderTask.PRIORITY_VISIBLE);
+        } else if (!job.task.hasStarted() && job.task.getPriority() != RenderTask.PRIORITY_VISIBLE) {
+            job.task.cancel(false);
+            executor.remove(job.task);
+            enqueue(context.getApplicationContext(), job, RenderTask.PRIORITY_VISIBLE);
+        }
+        job.listener = listener;
+    }
+
+    /**
+     * Stop reporting to the listener of the document; the conversion carries on.
+     */
+    static void removeListener(String fingerprint) {
+        Job job = jobs.get(fingerprint);
+        if (job != null) {
+            job.listener = null;
+        }
+    }
+
+    private static void enqueue(Context context, Job job, int priority) {
+        jobs.put(job.fingerprint, job);
+        job.task = new RenderTask(priority, () -> {
+            boolean success = run(context, job);
+            mainHandler.post(() -> {
+                jobs.remove(job.fingerprint);
+                if (success) {
+                    failed.remove(job.fingerprint);
+                } else {
+                    failed.add(job.fingerprint);
+                }
+                if (job.listener != null) {
+                    job.listener.onFinished(success);
+                }
+            });
+        });
+        executor.execute(job.task);
+    }
+
+    private static boolean run(Context context, Job job) {
+        File file;
+        if (job.document.isFromAssets()) {
+            file = FileManager.getInstance(context).copyAssetToInternalStorage(job.document.getFilePath());
+        } else {
+            file = new File(job.document.getFilePath());
+        }
+        if (file == null || !file.exists()) return false;
+
+        File packFile = SlidePack.cacheFile(context, job.fingerprint);
+        // Converted before, possibly by an earlier queue entry
+        if (SlidePack.load(packFile, file) != null) return true;
+
+        long start = System.currentTimeMillis();
+        File spillFile = new File(packFile.getPath() + ".pictures");
+        File dir = packFile.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        try (POIFSFileSystem fileSystem = new POIFSFileSystem(file, true);
+             HSLFSlideShow slideShow = new HSLFSlideShow(fileSystem);
+             PictureSpill pictures = new PictureSpill(spillFile)) {
+            List<HSLFSlide> slides = slideShow.getSlides();
+            List<SlideSource.SlideContent> contents = new ArrayList<>(slides.size());
+            for (int i = 0; i < slides.size(); i++) {
+                contents.add(convertSlide(slides.get(i), i, pictures));
+                int converted = i + 1;
+                mainHandler.post(() -> {
+                    if (job.listener != null) {
+                        job.listener.onProgress(converted, slides.size());
+                    }
+                });
+            }
+            pictures.close();
+            SlidePack.save(packFile, file, 0, 0, contents, Collections.emptyMap(), pictures.locations);
+            Log.d(TAG, "Converted " + slides.size() + " slides of " + file.getName() + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+            return SlidePack.load(packFile, file) != null;
+        } catch (IOException | RuntimeException | LinkageError | OutOfMemoryError e) {
+            // LinkageError: HSLF reaching for java.awt; OOM: a deck too big to open here
+            Log.e(TAG, "Failed to convert " + file.getName(), e);
+            return false;
+        } finally {
+            spillFile.delete();
+        }
+    }
+
+    private static SlideSource.SlideContent convertSlide(HSLFSlide slide, int index,
+                                                         PictureSpill pictures) throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<String> imagePaths = new ArrayList<>();
+        try {
+            for (List<HSLFTextParagraph> paragraphs : slide.getTextParagraphs()) {
+                String block = HSLFTextParagraph.getText(paragraphs).trim();
+                if (block.isEmpty()) continue;
+                if (text.length() > 0) text.append('\n');
+                text.append(block);
+            }
+            collectPictures(slide.getShapes(), imagePaths, pictures);
+        } catch (RuntimeException | LinkageError e) {
+            // Some shapes reach for java.awt; keep what was read
+            Log.w(TAG, "Partly converted slide " + (index + 1), e);
+        }
+        return new SlideSource.SlideContent(index + 1, text.toString(), imagePaths,
+                Collections.emptyList(), Color.WHITE);
+    }
+
+    private static void collectPictures(List<HSLFShape> shapes, List<String> imagePaths,
+                                        PictureSpill pictures) throws IOException {
+        for (HSLFShape shape : shapes) {
+            if (shape instanceof HSLFGroupShape) {
+                collectPictures(((HSLFGroupShape) shape).getShapes(), imagePaths, pictures);
+            } else if (shape instanceof HSLFPictureShape) {
+                HSLFPictureData data = ((HSLFPictureShape) shape).getPictureData();
+                // Metafiles and the like can't be decoded by BitmapFactory
+                if (data == null || !isBitmap(data.getType())) continue;
+                String path = "pictures/" + data.getIndex();
+                if (!pictures.contains(path)) {
+                    pictures.add(path, data.getData());
+                }
+                if (!imagePaths.contains(path)) {
+                    imagePaths.add(path);
+                }
+            }
+        }
+    }
+
+    private static boolean isBitmap(PictureData.PictureType type) {
+        return type == PictureData.PictureType.JPEG
+                || type == PictureData.PictureType.PNG
+                || type == PictureData.PictureType.DIB;
+    }
+}
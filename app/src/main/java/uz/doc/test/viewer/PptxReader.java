@@ -0,0 +1,440 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Color;
+import android.util.Log;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Streaming reader for .pptx packages.
+ *
+ * Only the zip central directory and the small presentation part are read up
+ * front; each slide's XML is pulled from the zip and parsed on demand. Media are
+ * only located ({@link #locate}), to be read later by whoever shows them. Parsed
+ * slides aren't kept between calls, only the layouts and masters they share, so
+ * memory use is bounded by one slide rather than the whole deck.
+ *
+ * Thread-safe: ZipFile reads are, locate() is synchronized, and shared parts are
+ * kept in concurrent maps.
+ */
+class PptxReader implements SlideSource {
+    private static final String TAG = "PptxReader";
+
+    private static final String NS_PRESENTATION = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final Pattern SLIDE_ENTRY = Pattern.compile("ppt/slides/slide(\\d+)\\.xml");
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    // Central directory record of a part: method, sizes, and its local header offset
+    private static final class DirectoryEntry {
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        DirectoryEntry(int method, long compressedSize, long size, long localHeaderOffset) {
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private final File file;
+    private final ZipFile zipFile;
+    // Zip entry name of every slide, in presentation order
+    private final List<String> slidePaths;
+    // Read on first locate(); guarded by this
+    private RandomAccessFile randomAccess;
+    private Map<String, DirectoryEntry> directory;
+    // Slide size from presentation.xml, EMU
+    private int slideWidth;
+    private int slideHeight;
+    // Parsed once per deck; slides share a handful of layouts and usually one master
+    private final Map<String, SlideXmlParser.Part> layouts = new ConcurrentHashMap<>();
+    private final Map<String, SlideXmlParser.Part> masters = new ConcurrentHashMap<>();
+
+    PptxReader(File file) throws IOException {
+        this.file = file;
+        this.zipFile = new ZipFile(file);
+        try {
+            this.slidePaths = readSlideOrder();
+        } catch (IOException | RuntimeException e) {
+            zipFile.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public int getSlideCount() {
+        return slidePaths.size();
+    }
+
+    /**
+     * Parse one slide. Reads that slide's part and relationships; its layout, master
+     * and theme are parsed once and shared by the slides using them.
+     */
+    @Override
+    public SlideContent readSlide(int index) throws IOException {
+        String slidePath = slidePaths.get(index);
+        Map<String, String> relationships = readRelationships(slidePath);
+        SlideXmlParser.Part layout = loadLayout(findTarget(relationships, "/slideLayouts/"));
+        SlideXmlParser.Part master = layout != null ? layout.parent : null;
+        Map<String, Integer> theme = master != null ? master.theme : null;
+        SlideXmlParser.Part slide = parsePart(slidePath, relationships, theme, layout, master, true);
+
+        // Master and layout decorations under the slide's own shapes
+        List<SlideShape> shapes = new ArrayList<>();
+        if (layout != null && slide.showMasterShapes) {
+            if (master != null && layout.showMasterShapes) shapes.addAll(master.shapes);
+            shapes.addAll(layout.shapes);
+        }
+        shapes.addAll(slide.shapes);
+        if (shapes.size() > SlideXmlParser.MAX_SHAPES) {
+            shapes = new ArrayList<>(shapes.subList(shapes.size() - SlideXmlParser.MAX_SHAPES, shapes.size()));
+        }
+
+        int background = slide.background;
+        if (background == 0 && layout != null) background = layout.background;
+        if (background == 0 && master != null) background = master.background;
+        if (background == 0 && theme != null && theme.containsKey("bg1")) background = theme.get("bg1");
+        if (background == 0) background = Color.WHITE;
+
+        StringBuilder slideText = new StringBuilder();
+        List<String> imagePaths = new ArrayList<>();
+        for (SlideShape shape : slide.shapes) {
+            if (shape.kind == SlideShape.KIND_PICTURE) {
+                imagePaths.add(shape.imagePath);
+                continue;
+            }
+            String text = shape.kind == SlideShape.KIND_TABLE ? tableText(shape) : text(shape.paragraphs);
+            if (!text.isEmpty()) {
+                if (slideText.length() > 0) slideText.append("\n\n");
+                slideText.append(text);
+            }
+        }
+        return new SlideContent(index + 1, slideText.toString(), imagePaths, shapes, background);
+    }
+
+    @Override
+    public int getSlideWidth() {
+        return slideWidth;
+    }
+
+    @Override
+    public int getSlideHeight() {
+        return slideHeight;
+    }
+
+    private SlideXmlParser.Part loadLayout(String path) {
+        if (path == null) return null;
+        SlideXmlParser.Part layout = layouts.get(path);
+        if (layout != null) return layout;
+
+        try {
+            Map<String, String> relationships = readRelationships(path);
+            SlideXmlParser.Part master = loadMaster(findTarget(relationships, "/slideMasters/"));
+            layout = parsePart(path, relationships, master != null ? master.theme : null, master, master, false);
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable slide layout " + path, e);
+            layout = new SlideXmlParser.Part();
+        }
+        SlideXmlParser.Part raced = layouts.putIfAbsent(path, layout);
+        return raced != null ? raced : layout;
+    }
+
+    private SlideXmlParser.Part loadMaster(String path) {
+        if (path == null) return null;
+        SlideXmlParser.Part master = masters.get(path);
+        if (master != null) return master;
+
+        try {
+            Map<String, String> relationships = readRelationships(path);
+            Map<String, Integer> theme = readTheme(findTarget(relationships, "/theme/"));
+            master = parsePart(path, relationships, theme, null, null, false);
+            master.theme = theme;
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable slide master " + path, e);
+            master = new SlideXmlParser.Part();
+        }
+        SlideXmlParser.Part raced = masters.putIfAbsent(path, master);
+        return raced != null ? raced : master;
+    }
+
+    private Map<String, Integer> readTheme(String path) throws IOException {
+        if (path == null) return null;
+        try (InputStream in = openEntry(path)) {
+            return SlideXmlParser.parseTheme(newParser(in));
+        } catch (XmlPullParserException e) {
+            throw new IOException("Malformed theme " + path, e);
+        }
+    }
+
+    private SlideXmlParser.Part parsePart(String path, Map<String, String> relationships, Map<String, Integer> theme,
+                                          SlideXmlParser.Part inherited, SlideXmlParser.Part master,
+                                          boolean isSlide) throws IOException {
+        try (InputStream in = openEntry(path)) {
+            return new SlideXmlParser(theme, relationships, inherited, master, isSlide).parse(newParser(in));
+        } catch (XmlPullParserException e) {
+            throw new IOException("Malformed part " + path, e);
+        }
+    }
+
+    private static String findTarget(Map<String, String> relationships, String directory) {
+        for (String target : relationships.values()) {
+            if (("/" + target).contains(directory)) return target;
+        }
+        return null;
+    }
+
+    private static String text(List<SlideShape.Paragraph> paragraphs) {
+        StringBuilder text = new StringBuilder();
+        for (SlideShape.Paragraph paragraph : paragraphs) {
+            if (text.length() > 0) text.append('\n');
+            for (SlideShape.Run run : paragraph.runs) {
+                text.append(run.text);
+            }
+        }
+        return text.toString().trim();
+    }
+
+    private static String tableText(SlideShape table) {
+        StringBuilder text = new StringBuilder();
+        for (SlideShape.Cell cell : table.cells) {
+            String cellText = text(cell.paragraphs);
+            if (cellText.isEmpty()) continue;
+            if (text.length() > 0) text.append('\n');
+            text.append(cellText);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads the central directory once, then one local header per part.
+     */
+    @Override
+    public synchronized EntryLocation locate(String path) throws IOException {
+        if (randomAccess == null) {
+            randomAccess = new RandomAccessFile(file, "r");
+            directory = readCentralDirectory(randomAccess);
+        }
+        DirectoryEntry entry = directory.get(path);
+        if (entry == null) throw new IOException("Missing part " + path);
+        if (entry.compressedSize > Integer.MAX_VALUE || entry.size > Integer.MAX_VALUE) {
+            throw new IOException("Part too large " + path);
+        }
+        if (entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+            throw new IOException("Unsupported compression " + entry.method + " for " + path);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_FILE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        randomAccess.seek(entry.localHeaderOffset);
+        randomAccess.readFully(header.array());
+        if (header.getInt(0) != LOCAL_FILE_HEADER) throw new IOException("Bad local header for " + path);
+        long dataOffset = entry.localHeaderOffset + LOCAL_FILE_HEADER_SIZE
+                + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+        return new EntryLocation(file, dataOffset, (int) entry.compressedSize, (int) entry.size,
+                entry.method == METHOD_DEFLATED);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            zipFile.close();
+        } finally {
+            if (randomAccess != null) randomAccess.close();
+        }
+    }
+
+    /**
+     * Name -> record for every entry. Presentations are far below the ZIP64 limits,
+     * which are not handled.
+     */
+    private static Map<String, DirectoryEntry> readCentralDirectory(RandomAccessFile in) throws IOException {
+        long length = in.length();
+        int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + 0xffff);
+        ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+        in.seek(length - tailLength);
+        in.readFully(tail.array());
+
+        // The record ends the file, followed only by an optional comment
+        int end = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) throw new IOException("No zip directory");
+        long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+        long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+        if (directoryOffset == 0xffffffffL || directoryOffset + directorySize > length) {
+            throw new IOException("Unsupported zip directory");
+        }
+
+        ByteBuffer records = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        in.seek(directoryOffset);
+        in.readFully(records.array());
+
+        Map<String, DirectoryEntry> entries = new HashMap<>();
+        int position = 0;
+        while (position + 46 <= directorySize && records.getInt(position) == CENTRAL_DIRECTORY_HEADER) {
+            int method = records.getShort(position + 10) & 0xffff;
+            long compressedSize = records.getInt(position + 20) & 0xffffffffL;
+            long size = records.getInt(position + 24) & 0xffffffffL;
+            int nameLength = records.getShort(position + 28) & 0xffff;
+            int extraLength = records.getShort(position + 30) & 0xffff;
+            int commentLength = records.getShort(position + 32) & 0xffff;
+            long localHeaderOffset = records.getInt(position + 42) & 0xffffffffL;
+            String name = new String(records.array(), position + 46, nameLength, StandardCharsets.UTF_8);
+            entries.put(name, new DirectoryEntry(method, compressedSize, size, localHeaderOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Slide parts in the order of presentation.xml's slide id list, or by slide
+     * number when the presentation part can't be read.
+     */
+    private List<String> readSlideOrder() throws IOException {
+        List<String> ordered = new ArrayList<>();
+        try {
+            Map<String, String> relationships = readRelationships("ppt/presentation.xml");
+            try (InputStream in = openEntry("ppt/presentation.xml")) {
+                XmlPullParser parser = newParser(in);
+                for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                    if (event != XmlPullParser.START_TAG || !NS_PRESENTATION.equals(parser.getNamespace())) {
+                        continue;
+                    }
+                    if ("sldId".equals(parser.getName())) {
+                        String target = relationships.get(parser.getAttributeValue(NS_RELATIONSHIPS, "id"));
+                        if (target != null && zipFile.getEntry(target) != null) {
+                            ordered.add(target);
+                        }
+                    } else if ("sldSz".equals(parser.getName())) {
+                        slideWidth = parseSize(parser.getAttributeValue(null, "cx"));
+                        slideHeight = parseSize(parser.getAttributeValue(null, "cy"));
+                    }
+                }
+            }
+        } catch (IOException | XmlPullParserException e) {
+            Log.w(TAG, "Unreadable presentation part, ordering slides by name", e);
+            ordered.clear();
+        }
+        if (!ordered.isEmpty()) return ordered;
+
+        Map<Integer, String> byNumber = new TreeMap<>();
+        for (ZipEntry entry : Collections.list(zipFile.entries())) {
+            Matcher matcher = SLIDE_ENTRY.matcher(entry.getName());
+            if (matcher.matches()) {
+                byNumber.put(Integer.parseInt(matcher.group(1)), entry.getName());
+            }
+        }
+        ordered.addAll(byNumber.values());
+        return ordered;
+    }
+
+    private static int parseSize(String value) {
+        try {
+            return value != null ? Math.max(0, Integer.parseInt(value)) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Relationship id -> zip entry name of the target, for internal relationships of a part.
+     */
+    private Map<String, String> readRelationships(String partPath) throws IOException {
+        int slash = partPath.lastIndexOf('/');
+        String dir = partPath.substring(0, slash + 1);
+        String relsPath = dir + "_rels/" + partPath.substring(slash + 1) + ".rels";
+        Map<String, String> relationships = new HashMap<>();
+        if (zipFile.getEntry(relsPath) == null) return relationships;
+
+        try (InputStream in = openEntry(relsPath)) {
+            XmlPullParser parser = newParser(in);
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG
+                        && NS_PACKAGE_RELATIONSHIPS.equals(parser.getNamespace())
+                        && "Relationship".equals(parser.getName())
+                        && !"External".equals(parser.getAttributeValue(null, "TargetMode"))) {
+                    String id = parser.getAttributeValue(null, "Id");
+                    String target = parser.getAttributeValue(null, "Target");
+                    if (id != null && target != null) {
+                        relationships.put(id, resolve(dir, target));
+                    }
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Malformed relationships " + relsPath, e);
+        }
+        return relationships;
+    }
+
+    private InputStream openEntry(String path) throws IOException {
+        ZipEntry entry = zipFile.getEntry(path);
+        if (entry == null) throw new IOException("Missing part " + path);
+        return zipFile.getInputStream(entry);
+    }
+
+    private static XmlPullParser newParser(InputStream in) throws XmlPullParserException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(in, null);
+        return parser;
+    }
+
+    /**
+     * Resolve a relationship target against the directory of its source part
+     * ("../media/image1.png" from "ppt/slides/" is "ppt/media/image1.png").
+     */
+    private static String resolve(String dir, String target) {
+        if (target.startsWith("/")) return target.substring(1);
+
+        List<String> segments = new ArrayList<>();
+        for (String segment : (dir + target).split("/")) {
+            if (segment.isEmpty() || ".".equals(segment)) continue;
+            if ("..".equals(segment)) {
+                if (!segments.isEmpty()) segments.remove(segments.size() - 1);
+            } else {
+                segments.add(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+}
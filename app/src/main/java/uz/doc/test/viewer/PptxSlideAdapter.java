@@ -1,8 +1,11 @@
 package uz.doc.test.viewer;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,37 +13,87 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import uz.doc.test.R;
 
+/**
+ * Slides of a .pptx, read lazily: a slide is taken from its {@link SlideSource}
+ * when it comes near the viewport, and only a window of slides is kept in memory.
+ *
+ * One parse loop runs at a time on the parse executor, bound slide first, then the
+ * ones ahead and behind it. Parsed slides reach the adapter in small batches, one
+ * range update per run of adjacent slides. The loop doesn't get more than one batch
+ * ahead of the main thread, and stops for good once {@link #cancel} is called.
+ *
+ * Pictures are decoded by Glide off the main thread, downsampled to the width of the
+ * image view, and kept in Glide's memory and disk caches as {@link SlideImage}s.
+ */
 public class PptxSlideAdapter extends RecyclerView.Adapter<PptxSlideAdapter.SlideViewHolder> {
+    private static final String TAG = "PptxSlideAdapter";
+    // Slides parsed ahead of (and behind) the last bound slide
+    private static final int PARSE_AHEAD = 3;
+    private static final int PARSE_BEHIND = 1;
+    private static final int BATCH_SIZE = 3;
+    // Text only; pictures are read from the package when shown
+    private static final int CACHE_BYTES = 1024 * 1024;
 
-    public static class SlideItem {
-        public final int slideNumber;
-        public final String text;
-        public final byte[] firstImageBytes;
+    static class SlideItem {
+        final int slideNumber;
+        final String text;
+        final SlideImage firstImage; // may be null
 
-        public SlideItem(int slideNumber, String text, byte[] firstImageBytes) {
+        SlideItem(int slideNumber, String text, SlideImage firstImage) {
             this.slideNumber = slideNumber;
             this.text = text == null ? "" : text;
-            this.firstImageBytes = firstImageBytes;
+            this.firstImage = firstImage;
         }
     }
 
     private final Context context;
-    private List<SlideItem> slides = new ArrayList<>();
+    private final SlideSource source;
+    private final String documentFingerprint;
+    private final Executor parseExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Integer, SlideItem> parsedSlides = new LruCache<Integer, SlideItem>(CACHE_BYTES) {
+        @Override
+        protected int sizeOf(Integer position, SlideItem item) {
+            return item.text.length() * 2 + 64;
+        }
+    };
+    private final AtomicBoolean parseLoopRunning = new AtomicBoolean();
+    // One published batch at a time: released once the main thread has applied it
+    private final Semaphore batchSlot = new Semaphore(1);
+    // Published and not applied yet, so the loop doesn't parse them again
+    private volatile Map<Integer, SlideItem> batchInFlight = Collections.emptyMap();
+    private volatile int lastBoundPosition;
+    private volatile boolean cancelled;
 
-    public PptxSlideAdapter(Context context) {
+    PptxSlideAdapter(Context context, SlideSource source, String documentFingerprint, Executor parseExecutor) {
         this.context = context;
-    }
-
-    public void setSlides(List<SlideItem> slides) {
-        this.slides = slides == null ? new ArrayList<>() : slides;
-        notifyDataSetChanged();
+        this.source = source;
+        this.documentFingerprint = documentFingerprint;
+        this.parseExecutor = parseExecutor;
     }
 
     @NonNull
@@ -52,12 +105,146 @@ public class PptxSlideAdapter extends RecyclerView.Adapter<PptxSlideAdapter.Slid
 
     @Override
     public void onBindViewHolder(@NonNull SlideViewHolder holder, int position) {
-        holder.bind(slides.get(position));
+        lastBoundPosition = position;
+        SlideItem item = parsedSlides.get(position);
+        if (item != null) {
+            holder.bind(item);
+        } else {
+            holder.bindPlaceholder(position + 1);
+        }
+        startParseLoop();
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull SlideViewHolder holder) {
+        holder.clearImage();
     }
 
     @Override
     public int getItemCount() {
-        return slides.size();
+        return source.getSlideCount();
+    }
+
+    /**
+     * Stop parsing: the loop exits after the slide in progress and nothing more is
+     * delivered. Call before the source is closed.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    private void startParseLoop() {
+        if (cancelled || nextWanted(Collections.emptyMap()) < 0) return;
+        if (!parseLoopRunning.compareAndSet(false, true)) return;
+        try {
+            parseExecutor.execute(this::parseLoop);
+        } catch (RejectedExecutionException e) {
+            // Executor shut down with the activity
+            parseLoopRunning.set(false);
+        }
+    }
+
+    private void parseLoop() {
+        try {
+            do {
+                Map<Integer, SlideItem> batch = new HashMap<>();
+                int next;
+                while (!cancelled && (next = nextWanted(batch)) >= 0) {
+                    batch.put(next, parse(next));
+                    // The slide on screen goes out alone, the rest in batches
+                    if (next == lastBoundPosition || batch.size() >= BATCH_SIZE) {
+                        publish(batch);
+                        batch = new HashMap<>();
+                    }
+                }
+                if (!batch.isEmpty()) publish(batch);
+                parseLoopRunning.set(false);
+                // A bind may have moved the window after the last check
+            } while (!cancelled && nextWanted(Collections.emptyMap()) >= 0
+                    && parseLoopRunning.compareAndSet(false, true));
+        } catch (InterruptedException e) {
+            parseLoopRunning.set(false);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The unparsed slide nearest the bound one, ahead before behind, or -1 when the
+     * window around it is complete.
+     */
+    private int nextWanted(Map<Integer, SlideItem> batch) {
+        int bound = lastBoundPosition;
+        int count = getItemCount();
+        Map<Integer, SlideItem> inFlight = batchInFlight;
+        for (int offset = 0; offset <= PARSE_AHEAD; offset++) {
+            int position = bound + offset;
+            if (position < count && isUnparsed(position, batch, inFlight)) return position;
+        }
+        for (int offset = 1; offset <= PARSE_BEHIND; offset++) {
+            int position = bound - offset;
+            if (position >= 0 && isUnparsed(position, batch, inFlight)) return position;
+        }
+        return -1;
+    }
+
+    private boolean isUnparsed(int position, Map<Integer, SlideItem> batch, Map<Integer, SlideItem> inFlight) {
+        return !batch.containsKey(position) && !inFlight.containsKey(position)
+                && parsedSlides.get(position) == null;
+    }
+
+    /**
+     * Hand a batch to the main thread, first waiting for the previous one to be
+     * applied if the UI is behind.
+     */
+    private void publish(Map<Integer, SlideItem> batch) throws InterruptedException {
+        batchSlot.acquire();
+        batchInFlight = batch;
+        mainHandler.post(() -> {
+            try {
+                if (!cancelled) apply(batch);
+            } finally {
+                batchInFlight = Collections.emptyMap();
+                batchSlot.release();
+            }
+        });
+    }
+
+    private void apply(Map<Integer, SlideItem> batch) {
+        List<Integer> positions = new ArrayList<>(batch.keySet());
+        Collections.sort(positions);
+        int runStart = -1;
+        int runLength = 0;
+        for (int position : positions) {
+            parsedSlides.put(position, batch.get(position));
+            if (runLength > 0 && position == runStart + runLength) {
+                runLength++;
+            } else {
+                if (runLength > 0) notifyItemRangeChanged(runStart, runLength);
+                runStart = position;
+                runLength = 1;
+            }
+        }
+        if (runLength > 0) notifyItemRangeChanged(runStart, runLength);
+    }
+
+    private SlideItem parse(int position) {
+        try {
+            SlideSource.SlideContent content = source.readSlide(position);
+            SlideImage firstImage = null;
+            if (!content.imagePaths.isEmpty()) {
+                String path = content.imagePaths.get(0);
+                try {
+                    firstImage = new SlideImage(documentFingerprint, path, source.locate(path));
+                } catch (IOException e) {
+                    Log.w(TAG, "Missing picture on slide " + content.slideNumber, e);
+                }
+            }
+            return new SlideItem(content.slideNumber, content.text, firstImage);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to parse slide " + (position + 1), e);
+            // Show it empty rather than retrying on every bind
+            return new SlideItem(position + 1, "", null);
+        }
     }
 
     class SlideViewHolder extends RecyclerView.ViewHolder {
@@ -72,6 +259,12 @@ public class PptxSlideAdapter extends RecyclerView.Adapter<PptxSlideAdapter.Slid
             ivSlideImage = itemView.findViewById(R.id.iv_slide_image);
         }
 
+        void bindPlaceholder(int slideNumber) {
+            tvSlideTitle.setText("Slide " + slideNumber);
+            tvSlideText.setVisibility(View.GONE);
+            clearImage();
+        }
+
         void bind(SlideItem item) {
             tvSlideTitle.setText("Slide " + item.slideNumber);
 
@@ -82,20 +275,40 @@ public class PptxSlideAdapter extends RecyclerView.Adapter<PptxSlideAdapter.Slid
                 tvSlideText.setText(item.text);
             }
 
-            if (item.firstImageBytes != null && item.firstImageBytes.length > 0) {
-                Bitmap bmp = BitmapFactory.decodeByteArray(item.firstImageBytes, 0, item.firstImageBytes.length);
-                if (bmp != null) {
-                    ivSlideImage.setVisibility(View.VISIBLE);
-                    ivSlideImage.setImageBitmap(bmp);
-                } else {
-                    ivSlideImage.setVisibility(View.GONE);
-                    ivSlideImage.setImageDrawable(null);
-                }
+            if (item.firstImage != null) {
+                ivSlideImage.setVisibility(View.VISIBLE);
+                // Keep the downsampled result; the source is already on the device
+                Glide.with(ivSlideImage)
+                        .load(item.firstImage)
+                        .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                        .format(DecodeFormat.PREFER_RGB_565)
+                        .listener(hideOnFailure)
+                        .into(ivSlideImage);
             } else {
-                ivSlideImage.setVisibility(View.GONE);
-                ivSlideImage.setImageDrawable(null);
+                clearImage();
             }
         }
+
+        void clearImage() {
+            Glide.with(ivSlideImage).clear(ivSlideImage);
+            ivSlideImage.setVisibility(View.GONE);
+        }
+
+        private final RequestListener<Drawable> hideOnFailure = new RequestListener<Drawable>() {
+            @Override
+            public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                        @NonNull Target<Drawable> target, boolean isFirstResource) {
+                Log.w(TAG, "Undecodable picture on slide", e);
+                ivSlideImage.setVisibility(View.GONE);
+                return true;
+            }
+
+            @Override
+            public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model, Target<Drawable> target,
+                                           @NonNull DataSource dataSource, boolean isFirstResource) {
+                return false;
+            }
+        };
     }
 }
 
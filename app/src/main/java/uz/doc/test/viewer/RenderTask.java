@@ -0,0 +1,50 @@
+package uz.doc.test.viewer;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queued unit of render-thread work. Lower priority values run first; tasks of
+ * equal priority run in submission order.
+ */
+final class RenderTask extends FutureTask<Void> implements Comparable<RenderTask> {
+    /** Pages and tiles on screen, page measuring */
+    static final int PRIORITY_VISIBLE = 0;
+    /** Pages expected to scroll into view soon */
+    static final int PRIORITY_PREFETCH = 10;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final int priority;
+    private final long sequence = SEQUENCE.getAndIncrement();
+    private volatile boolean started;
+
+    RenderTask(int priority, Runnable work) {
+        super(work, null);
+        this.priority = priority;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Whether the render thread has picked this task up; cancelling a started
+     * task throws away work already in progress.
+     */
+    boolean hasStarted() {
+        return started;
+    }
+
+    @Override
+    public void run() {
+        started = true;
+        super.run();
+    }
+
+    @Override
+    public int compareTo(RenderTask other) {
+        if (priority != other.priority) return Integer.compare(priority, other.priority);
+        return Long.compare(sequence, other.sequence);
+    }
+}
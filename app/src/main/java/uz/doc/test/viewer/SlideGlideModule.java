@@ -0,0 +1,44 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Glide setup for slide pictures: the {@link SlideImage} loader, and a memory cache
+ * sized from {@link MemoryBudget} alongside the PDF page caches.
+ */
+@GlideModule
+public class SlideGlideModule extends AppGlideModule {
+    private static final String DISK_CACHE_DIR = "slide_images";
+    private static final long DISK_CACHE_BYTES = 64L * 1024 * 1024;
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        int defaultBytes = new MemorySizeCalculator.Builder(context).build().getMemoryCacheSize();
+        int budgetBytes = Math.min(defaultBytes, MemoryBudget.glideBytes(context));
+        builder.setMemoryCache(new LruResourceCache(budgetBytes));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_DIR, DISK_CACHE_BYTES));
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        registry.prepend(SlideImage.class, ByteBuffer.class, new SlideImageLoader.Factory());
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
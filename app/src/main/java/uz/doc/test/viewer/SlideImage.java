@@ -0,0 +1,99 @@
+package uz.doc.test.viewer;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Glide model for a picture embedded in a presentation: where its bytes sit on
+ * disk, not the bytes themselves, which are only read when Glide decodes
+ * it. Identity is the document fingerprint plus the picture's part name, so the
+ * decoded image stays cached across rebinds and reopens of the deck.
+ */
+final class SlideImage {
+    final String documentFingerprint;
+    final String path;
+    private final SlideSource.EntryLocation location;
+
+    SlideImage(String documentFingerprint, String path, SlideSource.EntryLocation location) {
+        this.documentFingerprint = documentFingerprint;
+        this.path = path;
+        this.location = location;
+    }
+
+    /** Stable across processes; used for Glide's disk cache key. */
+    String cacheKey() {
+        return documentFingerprint + "/" + path;
+    }
+
+    /**
+     * The picture's bytes: a read-only mapping of the file when the part is
+     * stored, which is the usual case for already-compressed JPEG and PNG, or an
+     * inflated copy otherwise.
+     */
+    ByteBuffer read() throws IOException {
+        return read(path, location);
+    }
+
+    /**
+     * The bytes of the picture at path, as {@link #read()}; for drawing slides
+     * outside Glide.
+     */
+    static ByteBuffer read(String path, SlideSource.EntryLocation location) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(location.file, "r");
+             FileChannel channel = file.getChannel()) {
+            if (!location.deflated) {
+                // The mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, location.dataOffset, location.size);
+            }
+
+            // Raw deflate wants one byte of padding after the input
+            byte[] compressed = new byte[location.compressedSize + 1];
+            file.seek(location.dataOffset);
+            file.readFully(compressed, 0, location.compressedSize);
+            byte[] data = new byte[location.size];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                int inflated = 0;
+                while (inflated < data.length && !inflater.finished()) {
+                    int n = inflater.inflate(data, inflated, data.length - inflated);
+                    if (n == 0 && inflater.needsInput()) break;
+                    inflated += n;
+                }
+                if (inflated != data.length) {
+                    throw new IOException("Short picture data in " + path + ": " + inflated + "/" + data.length);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt picture " + path, e);
+            } finally {
+                inflater.end();
+            }
+            return ByteBuffer.wrap(data);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SlideImage)) return false;
+        SlideImage other = (SlideImage) o;
+        return documentFingerprint.equals(other.documentFingerprint) && path.equals(other.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * documentFingerprint.hashCode() + path.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return cacheKey();
+    }
+}
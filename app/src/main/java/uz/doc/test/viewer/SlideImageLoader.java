@@ -0,0 +1,83 @@
+package uz.doc.test.viewer;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Feeds {@link SlideImage} bytes to Glide's ByteBuffer decoders, which bounds-decode
+ * and downsample to the target size. The bytes are read from the package on Glide's
+ * source thread, only when the picture isn't already in Glide's caches.
+ */
+class SlideImageLoader implements ModelLoader<SlideImage, ByteBuffer> {
+
+    static class Factory implements ModelLoaderFactory<SlideImage, ByteBuffer> {
+        @NonNull
+        @Override
+        public ModelLoader<SlideImage, ByteBuffer> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new SlideImageLoader();
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+
+    @Override
+    public LoadData<ByteBuffer> buildLoadData(@NonNull SlideImage model, int width, int height,
+                                              @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(model.cacheKey()), new Fetcher(model));
+    }
+
+    @Override
+    public boolean handles(@NonNull SlideImage model) {
+        return true;
+    }
+
+    private static class Fetcher implements DataFetcher<ByteBuffer> {
+        private final SlideImage image;
+
+        Fetcher(SlideImage image) {
+            this.image = image;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super ByteBuffer> callback) {
+            try {
+                callback.onDataReady(image.read());
+            } catch (IOException e) {
+                callback.onLoadFailed(e);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @NonNull
+        @Override
+        public Class<ByteBuffer> getDataClass() {
+            return ByteBuffer.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+}
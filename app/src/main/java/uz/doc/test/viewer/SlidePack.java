@@ -0,0 +1,434 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The parsed slides of a presentation, persisted per document fingerprint so
+ * reopening a deck maps one file instead of parsing the package again.
+ *
+ * Layout (big-endian): header with the slide size, the picture table (part name and
+ * location in the source file or in the pack), a table of record offsets, one
+ * record per slide (number, UTF-8 text, picture part names, background and shapes),
+ * then the pictures stored in the pack. Records are decoded from the mapping on
+ * demand.
+ */
+final class SlidePack implements SlideSource {
+    private static final String TAG = "SlidePack";
+    private static final int MAGIC = 0x534C504B; // "SLPK"
+    private static final int FORMAT_VERSION = 3;
+    // Packs of decks not opened for a while are deleted past this count
+    private static final int MAX_PACKS = 16;
+    // Picture table flags
+    private static final int FLAG_DEFLATED = 1;
+    private static final int FLAG_IN_PACK = 2;
+
+    private final ByteBuffer data;
+    private final int slideWidth;
+    private final int slideHeight;
+    private final int[] recordOffsets;
+    private final Map<String, EntryLocation> locations;
+
+    private SlidePack(ByteBuffer data, int slideWidth, int slideHeight, int[] recordOffsets,
+                      Map<String, EntryLocation> locations) {
+        this.data = data;
+        this.slideWidth = slideWidth;
+        this.slideHeight = slideHeight;
+        this.recordOffsets = recordOffsets;
+        this.locations = locations;
+    }
+
+    /**
+     * Where the pack of the document with this fingerprint is kept.
+     */
+    static File cacheFile(Context context, String fingerprint) {
+        return new File(new File(context.getCacheDir(), "slide_packs"), fingerprint);
+    }
+
+    /**
+     * Map a pack whose pictures live in source or in the pack itself, or return null
+     * if there is no usable pack.
+     */
+    static SlidePack load(File file, File source) {
+        if (!file.exists()) return null;
+
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt() != MAGIC || data.getInt() != FORMAT_VERSION) return null;
+            // The fingerprint already covers the source, this guards against a re-extracted asset
+            if (data.getLong() != source.length()) return null;
+            int slideWidth = data.getInt();
+            int slideHeight = data.getInt();
+
+            int locationCount = data.getInt();
+            Map<String, EntryLocation> locations = new HashMap<>(locationCount * 2);
+            for (int i = 0; i < locationCount; i++) {
+                String path = getString(data);
+                long offset = data.getLong();
+                int compressedSize = data.getInt();
+                int size = data.getInt();
+                int flags = data.get();
+                locations.put(path, new EntryLocation((flags & FLAG_IN_PACK) != 0 ? file : source,
+                        offset, compressedSize, size, (flags & FLAG_DEFLATED) != 0));
+            }
+
+            int[] recordOffsets = new int[data.getInt()];
+            for (int i = 0; i < recordOffsets.length; i++) {
+                recordOffsets[i] = data.getInt();
+            }
+            // Keep recently opened packs when trimming
+            file.setLastModified(System.currentTimeMillis());
+            return new SlidePack(data, slideWidth, slideHeight, recordOffsets, locations);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Slide pack unreadable: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write a pack. Pictures in locations are referenced where they sit in source;
+     * those in copiedPictures are copied into the pack from their locations, for
+     * sources that can't be read like a zip.
+     */
+    static void save(File file, File source, int slideWidth, int slideHeight, List<SlideContent> slides,
+                     Map<String, EntryLocation> locations, Map<String, EntryLocation> copiedPictures) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(source.length());
+            out.writeInt(slideWidth);
+            out.writeInt(slideHeight);
+
+            List<byte[]> records = new ArrayList<>(slides.size());
+            long recordBytes = 0;
+            for (SlideContent slide : slides) {
+                byte[] record = encode(slide);
+                records.add(record);
+                recordBytes += record.length;
+            }
+
+            // Pictures go last; table entries have a fixed size apart from the name
+            long tableBytes = 4;
+            for (String path : locations.keySet()) {
+                tableBytes += locationBytes(path);
+            }
+            for (String path : copiedPictures.keySet()) {
+                tableBytes += locationBytes(path);
+            }
+            long pictureOffset = out.size() + tableBytes + 4 + 4L * records.size() + recordBytes;
+
+            out.writeInt(locations.size() + copiedPictures.size());
+            for (Map.Entry<String, EntryLocation> entry : locations.entrySet()) {
+                EntryLocation location = entry.getValue();
+                putString(out, entry.getKey());
+                out.writeLong(location.dataOffset);
+                out.writeInt(location.compressedSize);
+                out.writeInt(location.size);
+                out.writeByte(location.deflated ? FLAG_DEFLATED : 0);
+            }
+            for (Map.Entry<String, EntryLocation> entry : copiedPictures.entrySet()) {
+                EntryLocation location = entry.getValue();
+                putString(out, entry.getKey());
+                out.writeLong(pictureOffset);
+                out.writeInt(location.compressedSize);
+                out.writeInt(location.size);
+                out.writeByte(FLAG_IN_PACK | (location.deflated ? FLAG_DEFLATED : 0));
+                pictureOffset += location.compressedSize;
+            }
+
+            // Records follow the offset table, so their offsets are known once encoded
+            int offset = out.size() + 4 + 4 * records.size();
+            out.writeInt(records.size());
+            for (byte[] record : records) {
+                out.writeInt(offset);
+                offset += record.length;
+            }
+            for (byte[] record : records) {
+                out.write(record);
+            }
+            byte[] buffer = new byte[64 * 1024];
+            for (EntryLocation location : copiedPictures.values()) {
+                copy(location, out, buffer);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error saving slide pack", e);
+            tmp.delete();
+            return;
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trim(dir);
+    }
+
+    @Override
+    public int getSlideCount() {
+        return recordOffsets.length;
+    }
+
+    @Override
+    public int getSlideWidth() {
+        return slideWidth;
+    }
+
+    @Override
+    public int getSlideHeight() {
+        return slideHeight;
+    }
+
+    @Override
+    public SlideContent readSlide(int index) throws IOException {
+        ByteBuffer record = data.duplicate();
+        try {
+            record.position(recordOffsets[index]);
+            int slideNumber = record.getInt();
+            String text = getString(record);
+            String[] imagePaths = new String[record.getInt()];
+            for (int i = 0; i < imagePaths.length; i++) {
+                imagePaths[i] = getString(record);
+            }
+            int background = record.getInt();
+            List<SlideShape> shapes = new ArrayList<>();
+            for (int i = record.getInt(); i > 0; i--) {
+                shapes.add(getShape(record));
+            }
+            return new SlideContent(slideNumber, text, Arrays.asList(imagePaths), shapes, background);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt slide record " + index, e);
+        }
+    }
+
+    @Override
+    public EntryLocation locate(String path) throws IOException {
+        EntryLocation location = locations.get(path);
+        if (location == null) throw new IOException("Missing part " + path);
+        return location;
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released with the buffer
+    }
+
+    private static byte[] encode(SlideContent slide) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(slide.slideNumber);
+        putString(out, slide.text);
+        out.writeInt(slide.imagePaths.size());
+        for (String path : slide.imagePaths) {
+            putString(out, path);
+        }
+        out.writeInt(slide.backgroundColor);
+        out.writeInt(slide.shapes.size());
+        for (SlideShape shape : slide.shapes) {
+            putShape(out, shape);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void putShape(DataOutputStream out, SlideShape shape) throws IOException {
+        out.writeByte(shape.kind);
+        out.writeInt(shape.x);
+        out.writeInt(shape.y);
+        out.writeInt(shape.width);
+        out.writeInt(shape.height);
+        out.writeInt(shape.rotation);
+        out.writeByte((shape.flipH ? 1 : 0) | (shape.flipV ? 2 : 0));
+        out.writeByte(shape.geometry);
+        out.writeInt(shape.fillColor);
+        out.writeInt(shape.lineColor);
+        out.writeInt(shape.lineWidth);
+        out.writeByte(shape.textAnchor);
+        out.writeInt(shape.fontScale);
+        putParagraphs(out, shape.paragraphs);
+
+        putString(out, shape.imagePath);
+        out.writeInt(shape.cropLeft);
+        out.writeInt(shape.cropTop);
+        out.writeInt(shape.cropRight);
+        out.writeInt(shape.cropBottom);
+
+        putInts(out, shape.columnWidths);
+        putInts(out, shape.rowHeights);
+        out.writeInt(shape.cells.size());
+        for (SlideShape.Cell cell : shape.cells) {
+            out.writeInt(cell.gridSpan);
+            out.writeBoolean(cell.merged);
+            out.writeInt(cell.fillColor);
+            putParagraphs(out, cell.paragraphs);
+        }
+    }
+
+    private static SlideShape getShape(ByteBuffer in) {
+        SlideShape shape = new SlideShape();
+        shape.kind = in.get();
+        shape.x = in.getInt();
+        shape.y = in.getInt();
+        shape.width = in.getInt();
+        shape.height = in.getInt();
+        shape.rotation = in.getInt();
+        int flips = in.get();
+        shape.flipH = (flips & 1) != 0;
+        shape.flipV = (flips & 2) != 0;
+        shape.geometry = in.get();
+        shape.fillColor = in.getInt();
+        shape.lineColor = in.getInt();
+        shape.lineWidth = in.getInt();
+        shape.textAnchor = in.get();
+        shape.fontScale = in.getInt();
+        getParagraphs(in, shape.paragraphs);
+
+        shape.imagePath = getString(in);
+        shape.cropLeft = in.getInt();
+        shape.cropTop = in.getInt();
+        shape.cropRight = in.getInt();
+        shape.cropBottom = in.getInt();
+
+        shape.columnWidths = getInts(in);
+        shape.rowHeights = getInts(in);
+        for (int i = in.getInt(); i > 0; i--) {
+            SlideShape.Cell cell = new SlideShape.Cell();
+            cell.gridSpan = in.getInt();
+            cell.merged = in.get() != 0;
+            cell.fillColor = in.getInt();
+            getParagraphs(in, cell.paragraphs);
+            shape.cells.add(cell);
+        }
+        return shape;
+    }
+
+    private static void putParagraphs(DataOutputStream out, List<SlideShape.Paragraph> paragraphs)
+            throws IOException {
+        out.writeInt(paragraphs.size());
+        for (SlideShape.Paragraph paragraph : paragraphs) {
+            out.writeByte(paragraph.alignment);
+            out.writeInt(paragraph.runs.size());
+            for (SlideShape.Run run : paragraph.runs) {
+                putString(out, run.text);
+                out.writeInt(run.size);
+                out.writeInt(run.color);
+                out.writeByte((run.bold ? 1 : 0) | (run.italic ? 2 : 0) | (run.underline ? 4 : 0));
+            }
+        }
+    }
+
+    private static void getParagraphs(ByteBuffer in, List<SlideShape.Paragraph> paragraphs) {
+        for (int i = in.getInt(); i > 0; i--) {
+            SlideShape.Paragraph paragraph = new SlideShape.Paragraph();
+            paragraph.alignment = in.get();
+            for (int j = in.getInt(); j > 0; j--) {
+                SlideShape.Run run = new SlideShape.Run();
+                run.text = getString(in);
+                run.size = in.getInt();
+                run.color = in.getInt();
+                int style = in.get();
+                run.bold = (style & 1) != 0;
+                run.italic = (style & 2) != 0;
+                run.underline = (style & 4) != 0;
+                paragraph.runs.add(run);
+            }
+            paragraphs.add(paragraph);
+        }
+    }
+
+    private static void putInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values != null ? values.length : -1);
+        if (values == null) return;
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] getInts(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.getInt();
+        }
+        return values;
+    }
+
+    private static void copy(EntryLocation location, DataOutputStream out, byte[] buffer) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(location.file, "r")) {
+            in.seek(location.dataOffset);
+            int remaining = location.compressedSize;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (n < 0) throw new EOFException("Short picture data in " + location.file);
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    private static int locationBytes(String path) {
+        return 4 + path.getBytes(StandardCharsets.UTF_8).length + 8 + 4 + 4 + 1;
+    }
+
+    // Length-prefixed UTF-8, -1 for null; writeUTF would cap slide text at 64 KB
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Delete the least recently opened packs past {@link #MAX_PACKS}. Files still being
+     * written (a pack's .tmp, PptConverter's .pictures spill) are neither counted nor
+     * deleted; their writers clean them up.
+     */
+    private static void trim(File dir) {
+        File[] packs = dir.listFiles(file -> {
+            String name = file.getName();
+            return file.isFile() && !name.endsWith(".tmp") && !name.endsWith(".pictures");
+        });
+        if (packs == null || packs.length <= MAX_PACKS) return;
+
+        List<File> byAge = new ArrayList<>(Arrays.asList(packs));
+        Collections.sort(byAge, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < byAge.size() - MAX_PACKS; i++) {
+            byAge.get(i).delete();
+        }
+    }
+}
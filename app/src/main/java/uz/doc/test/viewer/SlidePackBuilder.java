@@ -0,0 +1,98 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Color;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Parses a whole presentation into its {@link SlidePack} in the background, a few
+ * slides per task, so the slides being looked at (parsed on the same executor) are
+ * never stuck behind the full pass.
+ */
+final class SlidePackBuilder implements Runnable {
+    private static final String TAG = "SlidePackBuilder";
+    private static final int SLIDES_PER_STEP = 4;
+
+    private final PptxReader reader;
+    private final File packFile;
+    private final Executor executor;
+    private final List<SlideSource.SlideContent> slides = new ArrayList<>();
+    private final Map<String, SlideSource.EntryLocation> locations = new HashMap<>();
+    private volatile boolean cancelled;
+
+    SlidePackBuilder(PptxReader reader, File packFile, Executor executor) {
+        this.reader = reader;
+        this.packFile = packFile;
+        this.executor = executor;
+    }
+
+    void start() {
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            // Executor shut down with the activity
+        }
+    }
+
+    /**
+     * Stop before the next step; nothing is written. Call before the reader is closed.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        if (cancelled) return;
+
+        int slideCount = reader.getSlideCount();
+        int end = Math.min(slides.size() + SLIDES_PER_STEP, slideCount);
+        while (slides.size() < end && !cancelled) {
+            slides.add(parse(slides.size()));
+        }
+
+        if (slides.size() < slideCount) {
+            start();
+        } else if (!cancelled) {
+            SlidePack.save(packFile, reader.getFile(), reader.getSlideWidth(), reader.getSlideHeight(),
+                    slides, locations, Collections.emptyMap());
+            Log.d(TAG, "Saved " + slideCount + " slides to " + packFile.getName());
+        }
+    }
+
+    private SlideSource.SlideContent parse(int index) {
+        SlideSource.SlideContent content;
+        try {
+            content = reader.readSlide(index);
+        } catch (IOException | RuntimeException e) {
+            // Packed empty, as the viewer shows it
+            Log.w(TAG, "Failed to parse slide " + (index + 1), e);
+            return new SlideSource.SlideContent(index + 1, "", Collections.emptyList(),
+                    Collections.emptyList(), Color.WHITE);
+        }
+
+        // Pictures the renderer draws include master and layout ones
+        List<String> paths = new ArrayList<>(content.imagePaths);
+        for (SlideShape shape : content.shapes) {
+            if (shape.kind == SlideShape.KIND_PICTURE) paths.add(shape.imagePath);
+        }
+        for (String path : paths) {
+            if (locations.containsKey(path)) continue;
+            try {
+                locations.put(path, reader.locate(path));
+            } catch (IOException e) {
+                Log.w(TAG, "Missing picture " + path, e);
+            }
+        }
+        return content;
+    }
+}
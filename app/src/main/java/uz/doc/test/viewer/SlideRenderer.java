@@ -0,0 +1,454 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.style.AbsoluteSizeSpan;
+import android.text.style.AlignmentSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.StyleSpan;
+import android.text.style.UnderlineSpan;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Draws slides with Canvas from their parsed {@link SlideShape}s, so presentations
+ * page, cache and zoom through {@link PdfRenderWorker} like PDF pages.
+ *
+ * Covers backgrounds, rectangles, rounded rectangles, ellipses, triangles and lines,
+ * styled text with alignment and anchoring, cropped pictures and simple tables.
+ * Other geometries are drawn as their bounding rectangle; effects, gradients
+ * (first stop only) and charts are not drawn.
+ *
+ * Pictures are kept decoded, downsampled to the size they were last drawn at, in a
+ * small per-renderer LRU, so the tiles and neighbouring renders of a slide don't
+ * read and decode them again.
+ *
+ * One thread at a time, like PdfRenderer. Renderers may share a source.
+ */
+final class SlideRenderer implements PageRenderer {
+    private static final String TAG = "SlideRenderer";
+    // PageDiskCache key: bump when drawing changes so cached slides are redrawn
+    static final int RENDER_MODE = 101;
+    static final int EMU_PER_POINT = 12700;
+    // Default text box insets
+    private static final int INSET_X = 91440;
+    private static final int INSET_Y = 45720;
+    // Longest side pictures are decoded at, however far the slide is zoomed
+    private static final int MAX_PICTURE_PX = 2048;
+    private static final int BORDER_COLOR = 0xFF9E9E9E;
+
+    /** A picture decoded at some sample size, with its full size in source pixels. */
+    private static final class DecodedPicture {
+        final Bitmap bitmap;
+        final int width;
+        final int height;
+        final int sampleSize;
+
+        DecodedPicture(Bitmap bitmap, int width, int height, int sampleSize) {
+            this.bitmap = bitmap;
+            this.width = width;
+            this.height = height;
+            this.sampleSize = sampleSize;
+        }
+    }
+
+    private final SlideSource source;
+    private final Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    // Tiles of one slide follow each other, so the last slide is kept parsed
+    private int cachedIndex = -1;
+    private SlideSource.SlideContent cachedSlide;
+    // Decoded pictures by part path; only touched on the render thread
+    private final LruCache<String, DecodedPicture> pictures;
+
+    SlideRenderer(SlideSource source, int pictureCacheBytes) {
+        this.source = source;
+        this.pictures = new LruCache<String, DecodedPicture>(Math.max(1, pictureCacheBytes)) {
+            @Override
+            protected int sizeOf(String path, DecodedPicture picture) {
+                return picture.bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String path, DecodedPicture oldValue,
+                                        DecodedPicture newValue) {
+                oldValue.bitmap.recycle();
+            }
+        };
+        fillPaint.setStyle(Paint.Style.FILL);
+        linePaint.setStyle(Paint.Style.STROKE);
+    }
+
+    @Override
+    public int getPageCount() {
+        return source.getSlideCount();
+    }
+
+    @Override
+    public Page openPage(int index) {
+        if (index < 0 || index >= source.getSlideCount()) {
+            throw new IllegalArgumentException("Invalid slide index " + index);
+        }
+        return new Page() {
+            @Override
+            public int getWidth() {
+                return Math.max(1, source.getSlideWidth() / EMU_PER_POINT);
+            }
+
+            @Override
+            public int getHeight() {
+                return Math.max(1, source.getSlideHeight() / EMU_PER_POINT);
+            }
+
+            @Override
+            public void render(Bitmap bitmap, Matrix transform) {
+                draw(index, bitmap, transform);
+            }
+
+            @Override
+            public void close() {
+                // Nothing held per page
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        // The source is shared and closed by its owner
+        cachedSlide = null;
+        pictures.evictAll();
+    }
+
+    private void draw(int index, Bitmap bitmap, Matrix transform) {
+        SlideSource.SlideContent slide = slide(index);
+
+        // Drawn in bitmap pixels, not scaled EMUs, so text is laid out at its real size
+        float scale;
+        Canvas canvas = new Canvas(bitmap);
+        if (transform == null) {
+            scale = (float) bitmap.getWidth() / Math.max(1, source.getSlideWidth());
+        } else {
+            float[] values = new float[9];
+            transform.getValues(values);
+            scale = values[Matrix.MSCALE_X] / EMU_PER_POINT;
+            canvas.translate(values[Matrix.MTRANS_X], values[Matrix.MTRANS_Y]);
+        }
+
+        canvas.drawColor(slide.backgroundColor);
+        for (SlideShape shape : slide.shapes) {
+            // The tile or page is dropped when interrupted, stop drawing it
+            if (Thread.currentThread().isInterrupted()) return;
+            drawShape(canvas, shape, scale);
+        }
+    }
+
+    private SlideSource.SlideContent slide(int index) {
+        if (index != cachedIndex) {
+            try {
+                cachedSlide = source.readSlide(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read slide " + (index + 1), e);
+            }
+            cachedIndex = index;
+        }
+        return cachedSlide;
+    }
+
+    private void drawShape(Canvas canvas, SlideShape shape, float scale) {
+        RectF bounds = new RectF(shape.x * scale, shape.y * scale,
+                (shape.x + (float) shape.width) * scale, (shape.y + (float) shape.height) * scale);
+        int saveCount = canvas.save();
+        try {
+            if (shape.rotation != 0) {
+                canvas.rotate(shape.rotation / 60000f, bounds.centerX(), bounds.centerY());
+            }
+            // Strokes reach half their width outside the bounds
+            float outset = shape.lineWidth * scale;
+            if (canvas.quickReject(bounds.left - outset, bounds.top - outset,
+                    bounds.right + outset, bounds.bottom + outset, Canvas.EdgeType.AA)) {
+                return;
+            }
+
+            if (shape.kind == SlideShape.KIND_PICTURE) {
+                drawPicture(canvas, shape, bounds);
+            } else if (shape.kind == SlideShape.KIND_TABLE) {
+                drawTable(canvas, shape, bounds, scale);
+            } else {
+                drawGeometry(canvas, shape, bounds, scale);
+                drawText(canvas, shape.paragraphs, bounds, shape.textAnchor, shape.fontScale, scale, false);
+            }
+        } finally {
+            canvas.restoreToCount(saveCount);
+        }
+    }
+
+    private void drawGeometry(Canvas canvas, SlideShape shape, RectF bounds, float scale) {
+        boolean fill = Color.alpha(shape.fillColor) != 0;
+        boolean line = Color.alpha(shape.lineColor) != 0;
+        if (!fill && !line) return;
+        fillPaint.setColor(shape.fillColor);
+        linePaint.setColor(shape.lineColor);
+        linePaint.setStrokeWidth(Math.max(1f, shape.lineWidth * scale));
+
+        switch (shape.geometry) {
+            case SlideShape.GEOMETRY_LINE: {
+                if (!line) return;
+                float x1 = shape.flipH ? bounds.right : bounds.left;
+                float x2 = shape.flipH ? bounds.left : bounds.right;
+                float y1 = shape.flipV ? bounds.bottom : bounds.top;
+                float y2 = shape.flipV ? bounds.top : bounds.bottom;
+                canvas.drawLine(x1, y1, x2, y2, linePaint);
+                return;
+            }
+            case SlideShape.GEOMETRY_ELLIPSE:
+                if (fill) canvas.drawOval(bounds, fillPaint);
+                if (line) canvas.drawOval(bounds, linePaint);
+                return;
+            case SlideShape.GEOMETRY_ROUND_RECT: {
+                // Default corner: 1/6 of the shorter side
+                float radius = Math.min(bounds.width(), bounds.height()) / 6f;
+                if (fill) canvas.drawRoundRect(bounds, radius, radius, fillPaint);
+                if (line) canvas.drawRoundRect(bounds, radius, radius, linePaint);
+                return;
+            }
+            case SlideShape.GEOMETRY_TRIANGLE: {
+                Path path = new Path();
+                float apexY = shape.flipV ? bounds.bottom : bounds.top;
+                float baseY = shape.flipV ? bounds.top : bounds.bottom;
+                path.moveTo(bounds.centerX(), apexY);
+                path.lineTo(bounds.right, baseY);
+                path.lineTo(bounds.left, baseY);
+                path.close();
+                if (fill) canvas.drawPath(path, fillPaint);
+                if (line) canvas.drawPath(path, linePaint);
+                return;
+            }
+            default:
+                if (fill) canvas.drawRect(bounds, fillPaint);
+                if (line) canvas.drawRect(bounds, linePaint);
+        }
+    }
+
+    private void drawText(Canvas canvas, List<SlideShape.Paragraph> paragraphs, RectF bounds,
+                          int anchor, int fontScale, float scale, boolean clip) {
+        if (paragraphs.isEmpty()) return;
+        float insetX = INSET_X * scale;
+        float insetY = INSET_Y * scale;
+        int width = (int) (bounds.width() - 2 * insetX);
+        if (width <= 0) return;
+
+        float sizeScale = EMU_PER_POINT / 100f * scale * fontScale / 100000f;
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        int defaultSize = 0;
+        for (int i = 0; i < paragraphs.size(); i++) {
+            SlideShape.Paragraph paragraph = paragraphs.get(i);
+            if (i > 0) text.append('\n');
+            int paragraphStart = text.length();
+            for (SlideShape.Run run : paragraph.runs) {
+                int start = text.length();
+                text.append(run.text);
+                int end = text.length();
+                int size = Math.max(1, Math.round(run.size * sizeScale));
+                if (defaultSize == 0) defaultSize = size;
+                if (start == end) continue;
+                text.setSpan(new AbsoluteSizeSpan(size), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                text.setSpan(new ForegroundColorSpan(run.color), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                int style = (run.bold ? Typeface.BOLD : 0) | (run.italic ? Typeface.ITALIC : 0);
+                if (style != 0) {
+                    text.setSpan(new StyleSpan(style), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                if (run.underline) {
+                    text.setSpan(new UnderlineSpan(), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+            }
+            if (text.length() > paragraphStart) {
+                text.setSpan(new AlignmentSpan.Standard(alignment(paragraph.alignment)),
+                        paragraphStart, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+        if (text.toString().trim().isEmpty()) return;
+
+        // Empty lines take the size of the first run
+        textPaint.setTextSize(defaultSize > 0 ? defaultSize : Math.max(1, Math.round(1800 * sizeScale)));
+        StaticLayout layout = StaticLayout.Builder.obtain(text, 0, text.length(), textPaint, width)
+                .setIncludePad(false)
+                .build();
+
+        float available = bounds.height() - 2 * insetY;
+        float top = bounds.top + insetY;
+        if (anchor == SlideShape.ANCHOR_MIDDLE) {
+            top += (available - layout.getHeight()) / 2;
+        } else if (anchor == SlideShape.ANCHOR_BOTTOM) {
+            top += available - layout.getHeight();
+        }
+
+        int saveCount = canvas.save();
+        if (clip) canvas.clipRect(bounds);
+        canvas.translate(bounds.left + insetX, top);
+        layout.draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private static Layout.Alignment alignment(int alignment) {
+        switch (alignment) {
+            case SlideShape.ALIGN_CENTER:
+                return Layout.Alignment.ALIGN_CENTER;
+            case SlideShape.ALIGN_RIGHT:
+                return Layout.Alignment.ALIGN_OPPOSITE;
+            default:
+                return Layout.Alignment.ALIGN_NORMAL;
+        }
+    }
+
+    private void drawTable(Canvas canvas, SlideShape shape, RectF bounds, float scale) {
+        if (shape.columnWidths == null || shape.rowHeights == null) return;
+        int columns = shape.columnWidths.length;
+        float[] xs = offsets(shape.columnWidths, bounds.left, scale);
+        float[] ys = offsets(shape.rowHeights, bounds.top, scale);
+
+        linePaint.setColor(BORDER_COLOR);
+        linePaint.setStrokeWidth(1f);
+        RectF cellBounds = new RectF();
+        for (int row = 0; row < shape.rowHeights.length; row++) {
+            for (int column = 0; column < columns; column++) {
+                int index = row * columns + column;
+                if (index >= shape.cells.size()) return;
+                SlideShape.Cell cell = shape.cells.get(index);
+                if (cell.merged) continue;
+
+                int span = Math.max(1, Math.min(cell.gridSpan, columns - column));
+                cellBounds.set(xs[column], ys[row], xs[column + span], ys[row + 1]);
+                if (Color.alpha(cell.fillColor) != 0) {
+                    fillPaint.setColor(cell.fillColor);
+                    canvas.drawRect(cellBounds, fillPaint);
+                }
+                canvas.drawRect(cellBounds, linePaint);
+                drawText(canvas, cell.paragraphs, cellBounds, SlideShape.ANCHOR_TOP, 100000, scale, true);
+            }
+        }
+    }
+
+    private static float[] offsets(int[] sizes, float start, float scale) {
+        float[] offsets = new float[sizes.length + 1];
+        offsets[0] = start;
+        long sum = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sum += sizes[i];
+            offsets[i + 1] = start + sum * scale;
+        }
+        return offsets;
+    }
+
+    private void drawPicture(Canvas canvas, SlideShape shape, RectF bounds) {
+        if (shape.imagePath == null || bounds.width() < 1 || bounds.height() < 1) return;
+
+        DecodedPicture cached = pictures.get(shape.imagePath);
+        byte[] data = null;
+        int width;
+        int height;
+        if (cached != null) {
+            width = cached.width;
+            height = cached.height;
+        } else {
+            data = readPicture(shape.imagePath);
+            if (data == null) return;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            width = options.outWidth;
+            height = options.outHeight;
+        }
+        if (width <= 0 || height <= 0) return;
+
+        // Crop in source pixels
+        Rect crop = new Rect(
+                (int) ((long) width * shape.cropLeft / 100000),
+                (int) ((long) height * shape.cropTop / 100000),
+                width - (int) ((long) width * shape.cropRight / 100000),
+                height - (int) ((long) height * shape.cropBottom / 100000));
+        if (crop.width() <= 0 || crop.height() <= 0) return;
+
+        // Downsample to about the size drawn, never past MAX_PICTURE_PX
+        float targetWidth = Math.min(bounds.width(), MAX_PICTURE_PX);
+        float targetHeight = Math.min(bounds.height(), MAX_PICTURE_PX);
+        int sampleSize = 1;
+        while (crop.width() / (sampleSize * 2) >= targetWidth && crop.height() / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        while (Math.max(crop.width(), crop.height()) / sampleSize > MAX_PICTURE_PX) {
+            sampleSize *= 2;
+        }
+
+        // A copy decoded at least this finely will do; a coarser one is replaced
+        DecodedPicture picture = cached;
+        if (picture == null || picture.sampleSize > sampleSize) {
+            if (data == null) {
+                data = readPicture(shape.imagePath);
+                if (data == null) return;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (bitmap == null) {
+                Log.w(TAG, "Undecodable picture " + shape.imagePath);
+                return;
+            }
+            picture = new DecodedPicture(bitmap, width, height, sampleSize);
+        }
+
+        // Sampled sizes round down; keep the crop inside the decoded bitmap
+        Bitmap bitmap = picture.bitmap;
+        float sx = (float) bitmap.getWidth() / width;
+        float sy = (float) bitmap.getHeight() / height;
+        Rect region = new Rect(Math.round(crop.left * sx), Math.round(crop.top * sy),
+                Math.min(bitmap.getWidth(), Math.round(crop.right * sx)),
+                Math.min(bitmap.getHeight(), Math.round(crop.bottom * sy)));
+        int saveCount = canvas.save();
+        if (shape.flipH || shape.flipV) {
+            canvas.scale(shape.flipH ? -1 : 1, shape.flipV ? -1 : 1, bounds.centerX(), bounds.centerY());
+        }
+        canvas.drawBitmap(bitmap, region, bounds, bitmapPaint);
+        canvas.restoreToCount(saveCount);
+
+        if (picture != cached) {
+            // One that would fill most of the cache is drawn once and dropped
+            if (bitmap.getAllocationByteCount() <= pictures.maxSize() / 2) {
+                pictures.put(shape.imagePath, picture);
+            } else {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    private byte[] readPicture(String path) {
+        try {
+            ByteBuffer buffer = SlideImage.read(path, source.locate(path));
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        } catch (IOException e) {
+            Log.w(TAG, "Missing picture " + path, e);
+            return null;
+        }
+    }
+}
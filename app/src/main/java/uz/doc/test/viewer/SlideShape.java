@@ -0,0 +1,102 @@
+package uz.doc.test.viewer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One drawable element of a slide: an autoshape or text box, a picture or a table.
+ * Positions are in slide EMUs (12700 per point). Placeholder positions, text
+ * defaults and theme colors are resolved by the parser, so drawing needs nothing
+ * but the shape. Colors are ARGB, 0 meaning none.
+ *
+ * Filled in by {@link SlideXmlParser}; read-only after that.
+ */
+final class SlideShape {
+    static final int KIND_SHAPE = 0;
+    static final int KIND_PICTURE = 1;
+    static final int KIND_TABLE = 2;
+
+    static final int GEOMETRY_RECT = 0;
+    static final int GEOMETRY_ROUND_RECT = 1;
+    static final int GEOMETRY_ELLIPSE = 2;
+    static final int GEOMETRY_TRIANGLE = 3;
+    static final int GEOMETRY_LINE = 4;
+
+    static final int ANCHOR_TOP = 0;
+    static final int ANCHOR_MIDDLE = 1;
+    static final int ANCHOR_BOTTOM = 2;
+
+    static final int ALIGN_LEFT = 0;
+    static final int ALIGN_CENTER = 1;
+    static final int ALIGN_RIGHT = 2;
+
+    /**
+     * A run of text with one formatting. Size is in hundredths of a point.
+     */
+    static final class Run {
+        String text;
+        int size;
+        int color;
+        boolean bold;
+        boolean italic;
+        boolean underline;
+    }
+
+    static final class Paragraph {
+        int alignment = -1; // -1 until resolved
+        final List<Run> runs = new ArrayList<>();
+    }
+
+    static final class Cell {
+        int gridSpan = 1;
+        boolean merged; // covered by a neighbour's span, not drawn
+        int fillColor;
+        final List<Paragraph> paragraphs = new ArrayList<>();
+    }
+
+    int kind = KIND_SHAPE;
+    int x;
+    int y;
+    int width;
+    int height;
+    int rotation; // 60000ths of a degree, clockwise
+    boolean flipH;
+    boolean flipV;
+
+    int geometry = GEOMETRY_RECT;
+    int fillColor;
+    int lineColor;
+    int lineWidth; // EMU
+
+    final List<Paragraph> paragraphs = new ArrayList<>();
+    int textAnchor = -1; // -1 until resolved
+    int fontScale = 100000; // normAutofit, 1/1000 %
+
+    String imagePath;
+    // Picture crop from each edge, 1/1000 %
+    int cropLeft;
+    int cropTop;
+    int cropRight;
+    int cropBottom;
+
+    int[] columnWidths;
+    int[] rowHeights;
+    final List<Cell> cells = new ArrayList<>(); // row-major, columnWidths.length per row
+
+    // Parse-time only: placeholder identity and text defaults
+    String placeholderType;
+    String placeholderIndex;
+    boolean hasBounds;
+    int defaultTextSize;
+    int defaultTextColor;
+    int defaultAlignment = -1;
+
+    boolean hasText() {
+        for (Paragraph paragraph : paragraphs) {
+            for (Run run : paragraph.runs) {
+                if (!run.text.trim().isEmpty()) return true;
+            }
+        }
+        return false;
+    }
+}
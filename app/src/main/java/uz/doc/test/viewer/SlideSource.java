@@ -0,0 +1,77 @@
+package uz.doc.test.viewer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where slides come from, for {@link PptxSlideAdapter} and {@link SlideRenderer}:
+ * the presentation itself ({@link PptxReader}) or its cached {@link SlidePack}.
+ *
+ * Thread-safe; called from the parse thread and the render threads.
+ */
+interface SlideSource extends Closeable {
+
+    /**
+     * Text, picture references and drawable layout of one slide.
+     */
+    final class SlideContent {
+        final int slideNumber;
+        final String text;
+        // Part names of the pictures on the slide, in document order
+        final List<String> imagePaths;
+        // Everything drawn on the slide, master and layout decorations first
+        final List<SlideShape> shapes;
+        final int backgroundColor;
+
+        SlideContent(int slideNumber, String text, List<String> imagePaths,
+                     List<SlideShape> shapes, int backgroundColor) {
+            this.slideNumber = slideNumber;
+            this.text = text;
+            this.imagePaths = imagePaths;
+            this.shapes = shapes;
+            this.backgroundColor = backgroundColor;
+        }
+    }
+
+    /**
+     * Where a part's data sits in a file, so it can be read later on any thread:
+     * {@link #compressedSize} bytes at {@link #dataOffset}, raw deflate or stored.
+     */
+    final class EntryLocation {
+        final File file;
+        final long dataOffset;
+        final int compressedSize;
+        final int size;
+        final boolean deflated;
+
+        EntryLocation(File file, long dataOffset, int compressedSize, int size, boolean deflated) {
+            this.file = file;
+            this.dataOffset = dataOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.deflated = deflated;
+        }
+    }
+
+    int getSlideCount();
+
+    /**
+     * Slide size in EMU (12700 per point), 0 when unknown.
+     */
+    int getSlideWidth();
+
+    int getSlideHeight();
+
+    /**
+     * Slide at a 0-based index.
+     */
+    SlideContent readSlide(int index) throws IOException;
+
+    /**
+     * Location of a picture: one of the {@link SlideContent#imagePaths} or of a
+     * picture shape.
+     */
+    EntryLocation locate(String path) throws IOException;
+}
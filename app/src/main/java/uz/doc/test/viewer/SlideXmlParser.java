@@ -0,0 +1,885 @@
+package uz.doc.test.viewer;
+
+import android.graphics.Color;
+
+import androidx.core.graphics.ColorUtils;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the shape tree of a slide, slide layout or slide master part into
+ * {@link SlideShape}s, covering what a lecture deck mostly uses: text boxes and
+ * placeholders with run formatting, pictures, basic autoshapes, connectors, groups
+ * and tables. Colors are resolved against the theme, and placeholders inherit
+ * position and text defaults from the layout and master.
+ *
+ * Not covered: custom geometry, effects, bullets and numbering, chart and diagram
+ * frames, and fills other than solid (gradients use their first stop).
+ */
+final class SlideXmlParser {
+    // Beyond this a part's remaining shapes are dropped, bounding the cost of one slide
+    static final int MAX_SHAPES = 500;
+    static final int DEFAULT_TEXT_SIZE = 1800;
+
+    /**
+     * What a parsed part contributes to the slides that use it.
+     */
+    static final class Part {
+        // Drawn shapes in z-order; for layouts and masters only the non-placeholder ones
+        final List<SlideShape> shapes = new ArrayList<>();
+        // Keyed "idx:<n>" and "type:<t>"
+        final Map<String, SlideShape> placeholders = new HashMap<>();
+        Part parent; // the layout's master
+        Map<String, Integer> theme; // masters only; may be null
+        int background;
+        boolean showMasterShapes = true;
+
+        // Master text styles, first level only
+        int titleSize;
+        int bodySize;
+        int otherSize;
+        int titleColor;
+        int bodyColor;
+        int otherColor;
+        int titleAlignment = -1;
+        int bodyAlignment = -1;
+        int otherAlignment = -1;
+
+        SlideShape findPlaceholder(String type, String index) {
+            SlideShape found = null;
+            if (index != null) found = placeholders.get("idx:" + index);
+            if (found == null) found = placeholders.get("type:" + normalizeType(type));
+            if (found == null && parent != null) found = parent.findPlaceholder(type, index);
+            return found;
+        }
+    }
+
+    // Affine map of group child coordinates to slide coordinates: sx * c + tx
+    private static final class Transform {
+        static final Transform IDENTITY = new Transform(1, 1, 0, 0);
+        final double scaleX;
+        final double scaleY;
+        final double translateX;
+        final double translateY;
+
+        Transform(double scaleX, double scaleY, double translateX, double translateY) {
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.translateX = translateX;
+            this.translateY = translateY;
+        }
+    }
+
+    private final Map<String, Integer> theme;
+    private final Map<String, String> relationships;
+    private final Part inherited; // may be null
+    private final Part master; // may be null
+    private final Part result = new Part();
+    private final boolean isSlide;
+
+    /**
+     * @param inherited where placeholders are looked up: the layout for a slide,
+     *                  the master for a layout, null for a master
+     * @param master    source of the text styles; null when parsing the master itself
+     */
+    SlideXmlParser(Map<String, Integer> theme, Map<String, String> relationships,
+                   Part inherited, Part master, boolean isSlide) {
+        this.theme = theme;
+        this.relationships = relationships;
+        this.inherited = inherited;
+        this.master = master;
+        this.isSlide = isSlide;
+        result.parent = inherited;
+    }
+
+    Part parse(XmlPullParser parser) throws IOException, XmlPullParserException {
+        if (!nextChild(parser, 0)) return result;
+        result.showMasterShapes = !"0".equals(parser.getAttributeValue(null, "showMasterSp"));
+
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("cSld".equals(name)) {
+                readCommonSlideData(parser);
+            } else if ("txStyles".equals(name)) {
+                readTextStyles(parser);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Scheme color name -> ARGB from a theme part, with the default tx/bg aliases.
+     */
+    static Map<String, Integer> parseTheme(XmlPullParser parser) throws IOException, XmlPullParserException {
+        Map<String, Integer> colors = new HashMap<>();
+        while (nextDescendant(parser, 0)) {
+            if (!"clrScheme".equals(parser.getName())) continue;
+
+            int depth = parser.getDepth();
+            while (nextChild(parser, depth)) {
+                String name = parser.getName();
+                int colorDepth = parser.getDepth();
+                while (nextChild(parser, colorDepth)) {
+                    int color = readColor(parser, null);
+                    if (color != 0) colors.put(name, color);
+                }
+            }
+            break;
+        }
+        alias(colors, "tx1", "dk1");
+        alias(colors, "bg1", "lt1");
+        alias(colors, "tx2", "dk2");
+        alias(colors, "bg2", "lt2");
+        return colors;
+    }
+
+    private static void alias(Map<String, Integer> colors, String alias, String name) {
+        Integer color = colors.get(name);
+        if (color != null) colors.put(alias, color);
+    }
+
+    private void readCommonSlideData(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("bg".equals(name)) {
+                result.background = readBackground(parser);
+            } else if ("spTree".equals(name)) {
+                readShapeTree(parser, Transform.IDENTITY);
+            }
+        }
+    }
+
+    private int readBackground(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("bgPr".equals(name)) {
+                int propertiesDepth = parser.getDepth();
+                while (nextChild(parser, propertiesDepth)) {
+                    if (isFill(parser.getName())) return readFill(parser);
+                }
+            } else if ("bgRef".equals(name)) {
+                return readFirstColor(parser);
+            }
+        }
+        return 0;
+    }
+
+    private void readShapeTree(XmlPullParser parser, Transform parentTransform)
+            throws IOException, XmlPullParserException {
+        Transform transform = parentTransform;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            switch (name) {
+                case "grpSpPr":
+                    transform = readGroupTransform(parser, parentTransform);
+                    break;
+                case "sp":
+                case "cxnSp":
+                    readShape(parser, transform);
+                    break;
+                case "pic":
+                    readPicture(parser, transform);
+                    break;
+                case "graphicFrame":
+                    readGraphicFrame(parser, transform);
+                    break;
+                case "grpSp":
+                    readShapeTree(parser, transform);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private Transform readGroupTransform(XmlPullParser parser, Transform parent)
+            throws IOException, XmlPullParserException {
+        long offX = 0, offY = 0, extX = 0, extY = 0, childOffX = 0, childOffY = 0, childExtX = 0, childExtY = 0;
+        int descendantDepth = parser.getDepth();
+        while (nextDescendant(parser, descendantDepth)) {
+            String name = parser.getName();
+            if ("off".equals(name)) {
+                offX = longAttribute(parser, "x");
+                offY = longAttribute(parser, "y");
+            } else if ("ext".equals(name)) {
+                extX = longAttribute(parser, "cx");
+                extY = longAttribute(parser, "cy");
+            } else if ("chOff".equals(name)) {
+                childOffX = longAttribute(parser, "x");
+                childOffY = longAttribute(parser, "y");
+            } else if ("chExt".equals(name)) {
+                childExtX = longAttribute(parser, "cx");
+                childExtY = longAttribute(parser, "cy");
+            }
+        }
+        if (childExtX == 0 || childExtY == 0) return parent;
+
+        double kx = (double) extX / childExtX;
+        double ky = (double) extY / childExtY;
+        return new Transform(parent.scaleX * kx, parent.scaleY * ky,
+                parent.scaleX * (offX - childOffX * kx) + parent.translateX,
+                parent.scaleY * (offY - childOffY * ky) + parent.translateY);
+    }
+
+    private void readShape(XmlPullParser parser, Transform transform) throws IOException, XmlPullParserException {
+        SlideShape shape = new SlideShape();
+        boolean[] specified = new boolean[2]; // fill, line
+        int styleFill = 0;
+        int styleLine = 0;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            switch (name) {
+                case "nvSpPr":
+                case "nvCxnSpPr":
+                    readPlaceholder(parser, shape);
+                    break;
+                case "spPr":
+                    readShapeProperties(parser, shape, specified);
+                    break;
+                case "style":
+                    int[] style = readStyle(parser, shape);
+                    styleFill = style[0];
+                    styleLine = style[1];
+                    break;
+                case "txBody":
+                    readTextBody(parser, shape.paragraphs, shape);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (!specified[0]) shape.fillColor = styleFill;
+        if (!specified[1] && styleLine != 0) {
+            shape.lineColor = styleLine;
+            if (shape.lineWidth == 0) shape.lineWidth = 9525;
+        }
+        if (shape.geometry == SlideShape.GEOMETRY_LINE) shape.fillColor = 0;
+        add(shape, transform);
+    }
+
+    private void readPicture(XmlPullParser parser, Transform transform) throws IOException, XmlPullParserException {
+        SlideShape shape = new SlideShape();
+        shape.kind = SlideShape.KIND_PICTURE;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("nvPicPr".equals(name)) {
+                readPlaceholder(parser, shape);
+            } else if ("blipFill".equals(name)) {
+                int descendantDepth = parser.getDepth();
+                while (nextDescendant(parser, descendantDepth)) {
+                    if ("blip".equals(parser.getName())) {
+                        String id = parser.getAttributeValue(PptxReader.NS_RELATIONSHIPS, "embed");
+                        shape.imagePath = id != null ? relationships.get(id) : null;
+                    } else if ("srcRect".equals(parser.getName())) {
+                        shape.cropLeft = intAttribute(parser, "l", 0);
+                        shape.cropTop = intAttribute(parser, "t", 0);
+                        shape.cropRight = intAttribute(parser, "r", 0);
+                        shape.cropBottom = intAttribute(parser, "b", 0);
+                    }
+                }
+            } else if ("spPr".equals(name)) {
+                readShapeProperties(parser, shape, new boolean[2]);
+            }
+        }
+        if (shape.imagePath != null) add(shape, transform);
+    }
+
+    private void readGraphicFrame(XmlPullParser parser, Transform transform)
+            throws IOException, XmlPullParserException {
+        SlideShape shape = new SlideShape();
+        shape.kind = SlideShape.KIND_TABLE;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("nvGraphicFramePr".equals(name)) {
+                readPlaceholder(parser, shape);
+            } else if ("xfrm".equals(name)) {
+                readTransform(parser, shape);
+            } else if ("graphic".equals(name)) {
+                int descendantDepth = parser.getDepth();
+                while (nextDescendant(parser, descendantDepth)) {
+                    if ("tbl".equals(parser.getName())) {
+                        readTable(parser, shape);
+                        break;
+                    }
+                }
+            }
+        }
+        // Charts and diagrams aren't drawn
+        if (shape.columnWidths != null) add(shape, transform);
+    }
+
+    private void readTable(XmlPullParser parser, SlideShape shape) throws IOException, XmlPullParserException {
+        List<Integer> columns = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("tblGrid".equals(name)) {
+                int gridDepth = parser.getDepth();
+                while (nextChild(parser, gridDepth)) {
+                    if ("gridCol".equals(parser.getName())) columns.add(intAttribute(parser, "w", 0));
+                }
+            } else if ("tr".equals(name)) {
+                rows.add(intAttribute(parser, "h", 0));
+                int cellCount = 0;
+                int rowDepth = parser.getDepth();
+                while (nextChild(parser, rowDepth)) {
+                    if (!"tc".equals(parser.getName())) continue;
+                    if (cellCount++ < columns.size()) shape.cells.add(readCell(parser));
+                }
+                // Keep the grid rectangular
+                for (; cellCount < columns.size(); cellCount++) {
+                    SlideShape.Cell empty = new SlideShape.Cell();
+                    empty.merged = true;
+                    shape.cells.add(empty);
+                }
+            }
+        }
+        if (columns.isEmpty()) return;
+        shape.columnWidths = toArray(columns);
+        shape.rowHeights = toArray(rows);
+    }
+
+    private SlideShape.Cell readCell(XmlPullParser parser) throws IOException, XmlPullParserException {
+        SlideShape.Cell cell = new SlideShape.Cell();
+        cell.gridSpan = Math.max(1, intAttribute(parser, "gridSpan", 1));
+        cell.merged = "1".equals(parser.getAttributeValue(null, "hMerge"))
+                || "1".equals(parser.getAttributeValue(null, "vMerge"));
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("txBody".equals(name)) {
+                readTextBody(parser, cell.paragraphs, null);
+            } else if ("tcPr".equals(name)) {
+                int propertiesDepth = parser.getDepth();
+                while (nextChild(parser, propertiesDepth)) {
+                    if (isFill(parser.getName())) cell.fillColor = readFill(parser);
+                }
+            }
+        }
+        return cell;
+    }
+
+    private void readPlaceholder(XmlPullParser parser, SlideShape shape) throws IOException, XmlPullParserException {
+        int descendantDepth = parser.getDepth();
+        while (nextDescendant(parser, descendantDepth)) {
+            if ("ph".equals(parser.getName())) {
+                shape.placeholderType = parser.getAttributeValue(null, "type");
+                shape.placeholderIndex = parser.getAttributeValue(null, "idx");
+                if (shape.placeholderType == null && shape.placeholderIndex == null) {
+                    shape.placeholderType = "body";
+                }
+            }
+        }
+    }
+
+    private void readShapeProperties(XmlPullParser parser, SlideShape shape, boolean[] specified)
+            throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("xfrm".equals(name)) {
+                readTransform(parser, shape);
+            } else if ("prstGeom".equals(name)) {
+                shape.geometry = geometry(parser.getAttributeValue(null, "prst"));
+            } else if (isFill(name)) {
+                shape.fillColor = readFill(parser);
+                specified[0] = true;
+            } else if ("ln".equals(name)) {
+                shape.lineWidth = intAttribute(parser, "w", shape.lineWidth);
+                int lineDepth = parser.getDepth();
+                while (nextChild(parser, lineDepth)) {
+                    if (isFill(parser.getName())) {
+                        shape.lineColor = readFill(parser);
+                        specified[1] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void readTransform(XmlPullParser parser, SlideShape shape) throws IOException, XmlPullParserException {
+        shape.rotation = intAttribute(parser, "rot", 0);
+        shape.flipH = "1".equals(parser.getAttributeValue(null, "flipH"));
+        shape.flipV = "1".equals(parser.getAttributeValue(null, "flipV"));
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("off".equals(name)) {
+                shape.x = intAttribute(parser, "x", 0);
+                shape.y = intAttribute(parser, "y", 0);
+                shape.hasBounds = true;
+            } else if ("ext".equals(name)) {
+                shape.width = intAttribute(parser, "cx", 0);
+                shape.height = intAttribute(parser, "cy", 0);
+            }
+        }
+    }
+
+    /**
+     * Colors the shape style matrix references: fill, line; the font color goes
+     * straight to the shape's text default.
+     */
+    private int[] readStyle(XmlPullParser parser, SlideShape shape) throws IOException, XmlPullParserException {
+        int[] colors = new int[2];
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            boolean none = "0".equals(parser.getAttributeValue(null, "idx"));
+            if ("fillRef".equals(name)) {
+                int color = readFirstColor(parser);
+                if (!none) colors[0] = color;
+            } else if ("lnRef".equals(name)) {
+                int color = readFirstColor(parser);
+                if (!none) colors[1] = color;
+            } else if ("fontRef".equals(name)) {
+                shape.defaultTextColor = readFirstColor(parser);
+            }
+        }
+        return colors;
+    }
+
+    private void readTextBody(XmlPullParser parser, List<SlideShape.Paragraph> paragraphs, SlideShape shape)
+            throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("bodyPr".equals(name) && shape != null) {
+                String anchor = parser.getAttributeValue(null, "anchor");
+                if (anchor != null) shape.textAnchor = anchor(anchor);
+                int bodyDepth = parser.getDepth();
+                while (nextChild(parser, bodyDepth)) {
+                    if ("normAutofit".equals(parser.getName())) {
+                        shape.fontScale = intAttribute(parser, "fontScale", 100000);
+                    }
+                }
+            } else if ("lstStyle".equals(name) && shape != null) {
+                int styleDepth = parser.getDepth();
+                while (nextChild(parser, styleDepth)) {
+                    if ("lvl1pPr".equals(parser.getName())) readLevelStyle(parser, shape);
+                }
+            } else if ("p".equals(name)) {
+                paragraphs.add(readParagraph(parser));
+            }
+        }
+    }
+
+    private void readLevelStyle(XmlPullParser parser, SlideShape shape) throws IOException, XmlPullParserException {
+        String align = parser.getAttributeValue(null, "algn");
+        if (align != null) shape.defaultAlignment = alignment(align);
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if ("defRPr".equals(parser.getName())) {
+                shape.defaultTextSize = intAttribute(parser, "sz", shape.defaultTextSize);
+                int color = readFirstFillColor(parser);
+                if (color != 0) shape.defaultTextColor = color;
+            }
+        }
+    }
+
+    private SlideShape.Paragraph readParagraph(XmlPullParser parser) throws IOException, XmlPullParserException {
+        SlideShape.Paragraph paragraph = new SlideShape.Paragraph();
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("pPr".equals(name)) {
+                String align = parser.getAttributeValue(null, "algn");
+                if (align != null) paragraph.alignment = alignment(align);
+            } else if ("r".equals(name) || "fld".equals(name)) {
+                paragraph.runs.add(readRun(parser));
+            } else if ("br".equals(name)) {
+                SlideShape.Run lineBreak = new SlideShape.Run();
+                lineBreak.text = "\n";
+                paragraph.runs.add(lineBreak);
+            }
+        }
+        return paragraph;
+    }
+
+    private SlideShape.Run readRun(XmlPullParser parser) throws IOException, XmlPullParserException {
+        SlideShape.Run run = new SlideShape.Run();
+        run.text = "";
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            if ("rPr".equals(name)) {
+                run.size = intAttribute(parser, "sz", 0);
+                run.bold = "1".equals(parser.getAttributeValue(null, "b"));
+                run.italic = "1".equals(parser.getAttributeValue(null, "i"));
+                String underline = parser.getAttributeValue(null, "u");
+                run.underline = underline != null && !"none".equals(underline);
+                run.color = readFirstFillColor(parser);
+            } else if ("t".equals(name)) {
+                run.text = parser.nextText();
+            }
+        }
+        return run;
+    }
+
+    private void readTextStyles(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            String name = parser.getName();
+            SlideShape level = new SlideShape();
+            int styleDepth = parser.getDepth();
+            while (nextChild(parser, styleDepth)) {
+                if ("lvl1pPr".equals(parser.getName())) readLevelStyle(parser, level);
+            }
+            if ("titleStyle".equals(name)) {
+                result.titleSize = level.defaultTextSize;
+                result.titleColor = level.defaultTextColor;
+                result.titleAlignment = level.defaultAlignment;
+            } else if ("bodyStyle".equals(name)) {
+                result.bodySize = level.defaultTextSize;
+                result.bodyColor = level.defaultTextColor;
+                result.bodyAlignment = level.defaultAlignment;
+            } else if ("otherStyle".equals(name)) {
+                result.otherSize = level.defaultTextSize;
+                result.otherColor = level.defaultTextColor;
+                result.otherAlignment = level.defaultAlignment;
+            }
+        }
+    }
+
+    /**
+     * Resolve placeholder inheritance and text defaults, map group coordinates to
+     * the slide, and keep the shape. Placeholders of layouts and masters are only
+     * remembered for the slides; their prompt text is never drawn.
+     */
+    private void add(SlideShape shape, Transform transform) {
+        boolean placeholder = shape.placeholderType != null || shape.placeholderIndex != null;
+        if (placeholder && inherited != null) {
+            SlideShape base = inherited.findPlaceholder(shape.placeholderType, shape.placeholderIndex);
+            if (base != null) inherit(shape, base);
+        }
+        if (!shape.hasBounds) return;
+
+        if (transform != Transform.IDENTITY) {
+            shape.x = (int) Math.round(transform.scaleX * shape.x + transform.translateX);
+            shape.y = (int) Math.round(transform.scaleY * shape.y + transform.translateY);
+            shape.width = (int) Math.round(transform.scaleX * shape.width);
+            shape.height = (int) Math.round(transform.scaleY * shape.height);
+        }
+
+        if (!isSlide && placeholder) {
+            if (shape.placeholderIndex != null) {
+                result.placeholders.put("idx:" + shape.placeholderIndex, shape);
+            }
+            String typeKey = "type:" + normalizeType(shape.placeholderType);
+            if (!result.placeholders.containsKey(typeKey)) result.placeholders.put(typeKey, shape);
+            return;
+        }
+
+        if (result.shapes.size() >= MAX_SHAPES) return;
+        resolveText(shape);
+        result.shapes.add(shape);
+    }
+
+    private static void inherit(SlideShape shape, SlideShape base) {
+        if (!shape.hasBounds && base.hasBounds) {
+            shape.x = base.x;
+            shape.y = base.y;
+            shape.width = base.width;
+            shape.height = base.height;
+            shape.rotation = base.rotation;
+            shape.hasBounds = true;
+        }
+        if (shape.defaultTextSize == 0) shape.defaultTextSize = base.defaultTextSize;
+        if (shape.defaultTextColor == 0) shape.defaultTextColor = base.defaultTextColor;
+        if (shape.defaultAlignment < 0) shape.defaultAlignment = base.defaultAlignment;
+        if (shape.textAnchor < 0) shape.textAnchor = base.textAnchor;
+        if (shape.fontScale == 100000) shape.fontScale = base.fontScale;
+    }
+
+    private void resolveText(SlideShape shape) {
+        String type = shape.placeholderType == null && shape.placeholderIndex == null
+                ? null : normalizeType(shape.placeholderType);
+        int size = shape.defaultTextSize;
+        int color = shape.defaultTextColor;
+        int align = shape.defaultAlignment;
+        if (master != null) {
+            if ("title".equals(type)) {
+                if (size == 0) size = master.titleSize;
+                if (color == 0) color = master.titleColor;
+                if (align < 0) align = master.titleAlignment;
+            } else if ("body".equals(type)) {
+                if (size == 0) size = master.bodySize;
+                if (color == 0) color = master.bodyColor;
+                if (align < 0) align = master.bodyAlignment;
+            } else {
+                if (size == 0) size = master.otherSize;
+                if (color == 0) color = master.otherColor;
+                if (align < 0) align = master.otherAlignment;
+            }
+        }
+        if (size == 0) size = DEFAULT_TEXT_SIZE;
+        if (color == 0) color = themeColor("tx1", Color.BLACK);
+        if (align < 0) align = SlideShape.ALIGN_LEFT;
+        if (shape.textAnchor < 0) shape.textAnchor = SlideShape.ANCHOR_TOP;
+
+        resolveParagraphs(shape.paragraphs, size, color, align);
+        for (SlideShape.Cell cell : shape.cells) {
+            resolveParagraphs(cell.paragraphs, DEFAULT_TEXT_SIZE, color, SlideShape.ALIGN_LEFT);
+        }
+    }
+
+    private static void resolveParagraphs(List<SlideShape.Paragraph> paragraphs, int size, int color, int align) {
+        for (SlideShape.Paragraph paragraph : paragraphs) {
+            if (paragraph.alignment < 0) paragraph.alignment = align;
+            for (SlideShape.Run run : paragraph.runs) {
+                if (run.size == 0) run.size = size;
+                if (run.color == 0) run.color = color;
+            }
+        }
+    }
+
+    /**
+     * Color of the fill element the parser is on (solidFill, gradFill, noFill...).
+     */
+    private int readFill(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        if ("solidFill".equals(name)) return readFirstColor(parser);
+        if ("gradFill".equals(name)) {
+            // First stop as a flat approximation
+            int descendantDepth = parser.getDepth();
+            while (nextDescendant(parser, descendantDepth)) {
+                if (isColor(parser.getName())) return readColor(parser, theme);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * First fill child's color, for elements like rPr that hold a fill among other children.
+     */
+    private int readFirstFillColor(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int color = 0;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if (color == 0 && isFill(parser.getName())) color = readFill(parser);
+        }
+        return color;
+    }
+
+    private int readFirstColor(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int color = 0;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if (color == 0 && isColor(parser.getName())) color = readColor(parser, theme);
+        }
+        return color;
+    }
+
+    /**
+     * ARGB of the color element the parser is on, with its luminance, tint, shade
+     * and alpha modifiers applied. 0 if unknown.
+     */
+    private static int readColor(XmlPullParser parser, Map<String, Integer> theme)
+            throws IOException, XmlPullParserException {
+        String name = parser.getName();
+        int color = 0;
+        switch (name) {
+            case "srgbClr":
+                color = parseHex(parser.getAttributeValue(null, "val"));
+                break;
+            case "sysClr":
+                color = parseHex(parser.getAttributeValue(null, "lastClr"));
+                break;
+            case "schemeClr":
+                Integer scheme = theme != null ? theme.get(parser.getAttributeValue(null, "val")) : null;
+                color = scheme != null ? scheme : 0;
+                break;
+            case "prstClr":
+                color = presetColor(parser.getAttributeValue(null, "val"));
+                break;
+            default:
+                break;
+        }
+
+        float[] hsl = null;
+        int depth = parser.getDepth();
+        while (nextChild(parser, depth)) {
+            if (color == 0) continue;
+            String modifier = parser.getName();
+            float value = intAttribute(parser, "val", 100000) / 100000f;
+            switch (modifier) {
+                case "lumMod":
+                case "lumOff":
+                    if (hsl == null) {
+                        hsl = new float[3];
+                        ColorUtils.colorToHSL(color, hsl);
+                    }
+                    hsl[2] = "lumMod".equals(modifier) ? hsl[2] * value : hsl[2] + value;
+                    hsl[2] = Math.max(0f, Math.min(1f, hsl[2]));
+                    color = ColorUtils.HSLToColor(hsl) & 0x00ffffff | (color & 0xff000000);
+                    break;
+                case "tint":
+                    color = ColorUtils.blendARGB(Color.WHITE, color, value) & 0x00ffffff | (color & 0xff000000);
+                    break;
+                case "shade":
+                    color = ColorUtils.blendARGB(Color.BLACK, color, value) & 0x00ffffff | (color & 0xff000000);
+                    break;
+                case "alpha":
+                    color = ColorUtils.setAlphaComponent(color, Math.round(value * 255));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return color;
+    }
+
+    private int themeColor(String name, int fallback) {
+        Integer color = theme != null ? theme.get(name) : null;
+        return color != null ? color : fallback;
+    }
+
+    private static int parseHex(String hex) {
+        if (hex == null || hex.length() != 6) return 0;
+        try {
+            return 0xff000000 | Integer.parseInt(hex, 16);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int presetColor(String name) {
+        if (name == null) return 0;
+        switch (name) {
+            case "black":
+                return Color.BLACK;
+            case "white":
+                return Color.WHITE;
+            case "red":
+                return Color.RED;
+            case "green":
+                return 0xff008000;
+            case "blue":
+                return Color.BLUE;
+            case "yellow":
+                return Color.YELLOW;
+            case "gray":
+                return 0xff808080;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isFill(String name) {
+        return "solidFill".equals(name) || "gradFill".equals(name) || "noFill".equals(name)
+                || "blipFill".equals(name) || "pattFill".equals(name);
+    }
+
+    private static boolean isColor(String name) {
+        return "srgbClr".equals(name) || "schemeClr".equals(name) || "sysClr".equals(name)
+                || "prstClr".equals(name) || "scrgbClr".equals(name) || "hslClr".equals(name);
+    }
+
+    private static int geometry(String preset) {
+        if (preset == null) return SlideShape.GEOMETRY_RECT;
+        switch (preset) {
+            case "roundRect":
+                return SlideShape.GEOMETRY_ROUND_RECT;
+            case "ellipse":
+                return SlideShape.GEOMETRY_ELLIPSE;
+            case "triangle":
+                return SlideShape.GEOMETRY_TRIANGLE;
+            case "line":
+            case "straightConnector1":
+                return SlideShape.GEOMETRY_LINE;
+            default:
+                return SlideShape.GEOMETRY_RECT;
+        }
+    }
+
+    private static int anchor(String value) {
+        if ("ctr".equals(value)) return SlideShape.ANCHOR_MIDDLE;
+        if ("b".equals(value)) return SlideShape.ANCHOR_BOTTOM;
+        return SlideShape.ANCHOR_TOP;
+    }
+
+    private static int alignment(String value) {
+        if ("ctr".equals(value)) return SlideShape.ALIGN_CENTER;
+        if ("r".equals(value)) return SlideShape.ALIGN_RIGHT;
+        return SlideShape.ALIGN_LEFT;
+    }
+
+    private static String normalizeType(String type) {
+        if (type == null) return "body";
+        switch (type) {
+            case "ctrTitle":
+                return "title";
+            case "subTitle":
+            case "obj":
+                return "body";
+            default:
+                return type;
+        }
+    }
+
+    private static int intAttribute(XmlPullParser parser, String name, int fallback) {
+        long value = longAttribute(parser, name, fallback);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static long longAttribute(XmlPullParser parser, String name) {
+        return longAttribute(parser, name, 0);
+    }
+
+    private static long longAttribute(XmlPullParser parser, String name, long fallback) {
+        String value = parser.getAttributeValue(null, name);
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Advance to the next direct child of the element at depth; false at its end tag.
+     * Deeper elements a caller didn't descend into are passed over.
+     */
+    static boolean nextChild(XmlPullParser parser, int depth) throws IOException, XmlPullParserException {
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.END_DOCUMENT) return false;
+            if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) return false;
+            if (event == XmlPullParser.START_TAG && parser.getDepth() == depth + 1) return true;
+        }
+    }
+
+    /**
+     * Advance to the next start tag at any depth inside the element at depth.
+     */
+    static boolean nextDescendant(XmlPullParser parser, int depth) throws IOException, XmlPullParserException {
+        while (true) {
+            int event = parser.next();
+            if (event == XmlPullParser.END_DOCUMENT) return false;
+            if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) return false;
+            if (event == XmlPullParser.START_TAG) return true;
+        }
+    }
+}
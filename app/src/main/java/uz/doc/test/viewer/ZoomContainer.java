@@ -0,0 +1,157 @@
+package uz.doc.test.viewer;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.HorizontalScrollView;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Pinch-to-zoom host for the page list.
+ *
+ * While pinching, the child is only scaled visually. When the gesture ends the
+ * zoom is committed by re-laying out the child at zoom x viewport width, so pages
+ * are bound and rendered at their real on-screen size: vertical scrolling stays
+ * with the RecyclerView and horizontal panning is handled by this scroll view.
+ */
+public class ZoomContainer extends HorizontalScrollView {
+
+    private static final float MIN_ZOOM = 1f;
+    private static final float MAX_ZOOM = 4f;
+
+    interface OnViewportChangeListener {
+        /** Zoom was committed or the zoomed content was panned horizontally. */
+        void onViewportChanged(float zoom);
+    }
+
+    private final ScaleGestureDetector scaleDetector;
+    private OnViewportChangeListener viewportChangeListener;
+    private float zoom = MIN_ZOOM;
+    private float gestureScale = 1f;
+    private float focusX;
+    private float focusY;
+    private boolean multiTouch;
+
+    public ZoomContainer(Context context) {
+        this(context, null);
+    }
+
+    public ZoomContainer(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleListener());
+        setFillViewport(true);
+    }
+
+    void setOnViewportChangeListener(OnViewportChangeListener listener) {
+        this.viewportChangeListener = listener;
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        scaleDetector.onTouchEvent(ev);
+
+        if (!multiTouch && ev.getPointerCount() > 1) {
+            // A second finger went down: take the gesture away from the page list
+            multiTouch = true;
+            MotionEvent cancel = MotionEvent.obtain(ev);
+            cancel.setAction(MotionEvent.ACTION_CANCEL);
+            super.dispatchTouchEvent(cancel);
+            cancel.recycle();
+        }
+
+        if (multiTouch) {
+            int action = ev.getActionMasked();
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                multiTouch = false;
+            }
+            return true;
+        }
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        if (viewportChangeListener != null && l != oldl) {
+            // Horizontal pan changes which part of the zoomed pages is visible
+            viewportChangeListener.onViewportChanged(zoom);
+        }
+    }
+
+    private void commitZoom(float newZoom) {
+        View child = getChildAt(0);
+        if (child == null) return;
+
+        child.setScaleX(1f);
+        child.setScaleY(1f);
+        if (newZoom < MIN_ZOOM * 1.05f) {
+            newZoom = MIN_ZOOM; // Snap back to fit-width
+        }
+        float ratio = newZoom / zoom;
+        zoom = newZoom;
+        if (ratio == 1f) return;
+
+        // Keep the content under the pinch focus in place
+        int scrollX = Math.round((getScrollX() + focusX) * ratio - focusX);
+        anchorVertically(child, ratio);
+
+        ViewGroup.LayoutParams params = child.getLayoutParams();
+        params.width = zoom == MIN_ZOOM ? ViewGroup.LayoutParams.MATCH_PARENT : Math.round(getWidth() * zoom);
+        child.setLayoutParams(params);
+
+        post(() -> {
+            scrollTo(scrollX, 0);
+            if (viewportChangeListener != null) {
+                viewportChangeListener.onViewportChanged(zoom);
+            }
+        });
+    }
+
+    private void anchorVertically(View child, float ratio) {
+        if (!(child instanceof RecyclerView)) return;
+        RecyclerView recyclerView = (RecyclerView) child;
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+
+        View anchor = recyclerView.findChildViewUnder(getScrollX() + focusX, focusY);
+        if (anchor == null) return;
+        int position = recyclerView.getChildAdapterPosition(anchor);
+        if (position == RecyclerView.NO_POSITION) return;
+
+        float offsetInItem = focusY - anchor.getTop();
+        ((LinearLayoutManager) recyclerView.getLayoutManager())
+                .scrollToPositionWithOffset(position, Math.round(focusY - offsetInItem * ratio));
+    }
+
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScaleBegin(ScaleGestureDetector detector) {
+            gestureScale = 1f;
+            focusX = detector.getFocusX();
+            focusY = detector.getFocusY();
+            return getChildAt(0) != null;
+        }
+
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            gestureScale *= detector.getScaleFactor();
+            gestureScale = Math.max(MIN_ZOOM / zoom, Math.min(MAX_ZOOM / zoom, gestureScale));
+
+            View child = getChildAt(0);
+            child.setPivotX(getScrollX() + focusX);
+            child.setPivotY(focusY);
+            child.setScaleX(gestureScale);
+            child.setScaleY(gestureScale);
+            return true;
+        }
+
+        @Override
+        public void onScaleEnd(ScaleGestureDetector detector) {
+            commitZoom(zoom * gestureScale);
+        }
+    }
+}
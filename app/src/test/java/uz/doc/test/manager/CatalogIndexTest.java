@@ -0,0 +1,136 @@
+package uz.doc.test.manager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uz.doc.test.model.Document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip and damaged-file handling of the binary catalog index.
+ */
+public class CatalogIndexTest {
+    private static final long APP_STAMP = 1700000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private CatalogIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder();
+        index = new CatalogIndex(directory);
+    }
+
+    @Test
+    public void readsBackWhatWasWritten() {
+        CatalogSnapshot written = sampleCatalog();
+        index.write(APP_STAMP, written);
+
+        CatalogSnapshot read = index.read(APP_STAMP);
+        assertNotNull(read);
+        assertArrayEquals(written.getCategories().keySet().toArray(), read.getCategories().keySet().toArray());
+        for (Map.Entry<String, Document[]> entry : written.getCategories().entrySet()) {
+            Document[] expected = entry.getValue();
+            Document[] actual = read.getCategory(entry.getKey());
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertSameDocument(expected[i], actual[i]);
+            }
+        }
+        assertSameDocument(written.getById("user-1"), read.getById("user-1"));
+        assertSameDocument(written.getByPath("darsliklar/Kirish.pdf"), read.getByPath("darsliklar/Kirish.pdf"));
+    }
+
+    @Test
+    public void missingIndexReadsAsNull() {
+        assertNull(index.read(APP_STAMP));
+    }
+
+    @Test
+    public void otherInstallReadsAsNull() {
+        index.write(APP_STAMP, sampleCatalog());
+        assertNull(index.read(APP_STAMP + 1));
+    }
+
+    @Test
+    public void corruptHeaderReadsAsNull() throws IOException {
+        index.write(APP_STAMP, sampleCatalog());
+        try (RandomAccessFile file = new RandomAccessFile(indexFile(), "rw")) {
+            file.seek(0);
+            file.write(0);
+        }
+        assertNull(index.read(APP_STAMP));
+    }
+
+    @Test
+    public void truncatedIndexReadsAsNull() throws IOException {
+        index.write(APP_STAMP, sampleCatalog());
+        byte[] complete = Files.readAllBytes(indexFile().toPath());
+
+        // Every cut, from an empty file to one byte short
+        for (int length = 0; length < complete.length; length++) {
+            try (RandomAccessFile file = new RandomAccessFile(indexFile(), "rw")) {
+                file.setLength(0);
+                file.write(complete, 0, length);
+            }
+            assertNull("Cut at " + length, index.read(APP_STAMP));
+        }
+    }
+
+    @Test
+    public void emptyCatalogRoundTrips() {
+        index.write(APP_STAMP, new CatalogSnapshot(new LinkedHashMap<>()));
+
+        CatalogSnapshot read = index.read(APP_STAMP);
+        assertNotNull(read);
+        assertTrue(read.getCategories().isEmpty());
+    }
+
+    private File indexFile() {
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        return files[0];
+    }
+
+    private static CatalogSnapshot sampleCatalog() {
+        Map<String, Document[]> categories = new LinkedHashMap<>();
+        categories.put("darsliklar", new Document[]{
+                new Document("asset-1", "Kirish", "darsliklar/Kirish.pdf", "darsliklar",
+                        Document.DocumentType.PDF),
+                new Document("asset-2", "O'zbek tili — taqdimot", "darsliklar/Taqdimot.pptx", "darsliklar",
+                        Document.DocumentType.PPTX),
+        });
+        categories.put("mening", new Document[]{
+                new Document("user-1", "Hisobot", "/data/user/0/uz.doc.test/files/user_files/mening/Hisobot.ppt",
+                        "mening", Document.DocumentType.PPT, false, 123456L, 1699999999000L),
+        });
+        categories.put("bo'sh", new Document[0]);
+        return new CatalogSnapshot(categories);
+    }
+
+    private static void assertSameDocument(Document expected, Document actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getFilePath(), actual.getFilePath());
+        assertEquals(expected.getCategoryId(), actual.getCategoryId());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.isFromAssets(), actual.isFromAssets());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getLastModified(), actual.getLastModified());
+    }
+}
@@ -0,0 +1,115 @@
+package uz.doc.test.viewer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Page offsets (what {@link PdfLayoutManager} scrolls by) and the cached table format.
+ */
+public class PageSizeTableTest {
+    // A4 portrait, A4 landscape, square
+    private static final int[] WIDTHS = {595, 842, 500};
+    private static final int[] HEIGHTS = {842, 595, 500};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pageTopsArePrefixSumsOfScaledHeights() {
+        PageSizeTable table = new PageSizeTable(WIDTHS, HEIGHTS);
+        int width = 1000;
+        int padding = 16;
+
+        int expectedTop = 0;
+        for (int i = 0; i < WIDTHS.length; i++) {
+            assertEquals("Page " + i, expectedTop, table.getPageTop(i, width, padding), 1);
+            expectedTop += Math.round((double) HEIGHTS[i] / WIDTHS[i] * width) + padding;
+        }
+        assertEquals(expectedTop, table.getTotalHeight(width, padding), 1);
+    }
+
+    @Test
+    public void offsetsDoNotDriftOverLongDocuments() {
+        int count = 5000;
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            widths[i] = 612;
+            heights[i] = 792;
+        }
+        PageSizeTable table = new PageSizeTable(widths, heights);
+
+        // Rounded once from the exact sum, not page by page
+        long expected = Math.round(792.0 / 612 * 1080 * count) + 8L * count;
+        assertEquals(expected, table.getTotalHeight(1080, 8));
+    }
+
+    @Test
+    public void zeroWidthPageTakesNoHeight() {
+        PageSizeTable table = new PageSizeTable(new int[]{0, 100}, new int[]{100, 100});
+        assertEquals(0f, table.getAspectRatio(0), 0f);
+        assertEquals(0, table.getPageTop(1, 500, 0));
+        assertEquals(500, table.getTotalHeight(500, 0));
+    }
+
+    @Test
+    public void readsBackWhatWasSaved() throws IOException {
+        File file = new File(folder.newFolder(), "sizes/abc");
+        new PageSizeTable(WIDTHS, HEIGHTS).save(file);
+
+        PageSizeTable loaded = PageSizeTable.load(file, WIDTHS.length);
+        assertNotNull(loaded);
+        assertEquals(WIDTHS.length, loaded.getPageCount());
+        for (int i = 0; i < WIDTHS.length; i++) {
+            assertEquals(WIDTHS[i], loaded.getWidth(i));
+            assertEquals(HEIGHTS[i], loaded.getHeight(i));
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void otherPageCountReadsAsNull() throws IOException {
+        File file = folder.newFile();
+        new PageSizeTable(WIDTHS, HEIGHTS).save(file);
+        assertNull(PageSizeTable.load(file, WIDTHS.length + 1));
+    }
+
+    @Test
+    public void missingTableReadsAsNull() {
+        assertNull(PageSizeTable.load(new File(folder.getRoot(), "missing"), 1));
+    }
+
+    @Test
+    public void corruptHeaderReadsAsNull() throws IOException {
+        File file = folder.newFile();
+        new PageSizeTable(WIDTHS, HEIGHTS).save(file);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(4);
+            out.writeInt(99);
+        }
+        assertNull(PageSizeTable.load(file, WIDTHS.length));
+    }
+
+    @Test
+    public void truncatedTableReadsAsNull() throws IOException {
+        File file = folder.newFile();
+        new PageSizeTable(WIDTHS, HEIGHTS).save(file);
+        byte[] complete = Files.readAllBytes(file.toPath());
+
+        for (int length = 0; length < complete.length; length++) {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(0);
+                out.write(complete, 0, length);
+            }
+            assertNull("Cut at " + length, PageSizeTable.load(file, WIDTHS.length));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package uz.doc.test.viewer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fling detection thresholds and the prefetch window.
+ */
+public class PdfPrefetcherTest {
+    private static final int VIEWPORT = 1000;
+
+    @Test
+    public void flingStartsAboveThreeViewportsPerSecond() {
+        assertFalse(PdfPrefetcher.isFastScrolling(false, 3000, VIEWPORT));
+        assertTrue(PdfPrefetcher.isFastScrolling(false, 3001, VIEWPORT));
+        assertTrue(PdfPrefetcher.isFastScrolling(false, -3001, VIEWPORT));
+    }
+
+    @Test
+    public void flingEndsOnlyBelowOneAndAHalfViewportsPerSecond() {
+        // Between the thresholds the previous state holds
+        assertTrue(PdfPrefetcher.isFastScrolling(true, 2000, VIEWPORT));
+        assertFalse(PdfPrefetcher.isFastScrolling(false, 2000, VIEWPORT));
+
+        assertTrue(PdfPrefetcher.isFastScrolling(true, 1501, VIEWPORT));
+        assertFalse(PdfPrefetcher.isFastScrolling(true, 1500, VIEWPORT));
+        assertFalse(PdfPrefetcher.isFastScrolling(true, 0, VIEWPORT));
+    }
+
+    @Test
+    public void unmeasuredViewportDoesNotDivideByZero() {
+        assertTrue(PdfPrefetcher.isFastScrolling(false, 4, 0));
+        assertFalse(PdfPrefetcher.isFastScrolling(false, 0, 0));
+    }
+
+    @Test
+    public void scrollingDownPrefetchesBelowThenOneAbove() {
+        assertArrayEquals(new int[]{8, 9, 4}, PdfPrefetcher.pagesToPrefetch(5, 7, true, 2));
+    }
+
+    @Test
+    public void scrollingUpPrefetchesAboveThenOneBelow() {
+        assertArrayEquals(new int[]{4, 3, 8}, PdfPrefetcher.pagesToPrefetch(5, 7, false, 2));
+    }
+
+    @Test
+    public void windowFollowsPrefetchDepth() {
+        assertArrayEquals(new int[]{1, 2, 3, 4, -1}, PdfPrefetcher.pagesToPrefetch(0, 0, true, 4));
+        assertArrayEquals(new int[]{1}, PdfPrefetcher.pagesToPrefetch(0, 0, false, 0));
+    }
+}
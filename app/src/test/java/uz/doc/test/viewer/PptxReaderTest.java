@@ -0,0 +1,177 @@
+package uz.doc.test.viewer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Locating parts through PptxReader's own central directory parsing. The packages
+ * have no presentation part, so slides are ordered by name and no XML is parsed.
+ */
+public class PptxReaderTest {
+    private static final byte[] PNG = bytes(3000, 7);
+    private static final byte[] JPEG = bytes(5000, 13);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void locatesStoredAndDeflatedParts() throws IOException {
+        File file = writePackage("Izoh", new byte[]{1, 2, 3, 4});
+        try (PptxReader reader = new PptxReader(file)) {
+            SlideSource.EntryLocation png = reader.locate("ppt/media/image1.png");
+            assertFalse(png.deflated);
+            assertEquals(PNG.length, png.size);
+            assertArrayEquals(PNG, read("ppt/media/image1.png", png));
+
+            SlideSource.EntryLocation jpeg = reader.locate("ppt/media/image2.jpeg");
+            assertTrue(jpeg.deflated);
+            assertEquals(JPEG.length, jpeg.size);
+            assertArrayEquals(JPEG, read("ppt/media/image2.jpeg", jpeg));
+        }
+    }
+
+    @Test
+    public void locatesPartsWithoutCommentOrExtraFields() throws IOException {
+        File file = writePackage(null, null);
+        try (PptxReader reader = new PptxReader(file)) {
+            assertArrayEquals(PNG, read("ppt/media/image1.png", reader.locate("ppt/media/image1.png")));
+            assertArrayEquals(JPEG, read("ppt/media/image2.jpeg", reader.locate("ppt/media/image2.jpeg")));
+        }
+    }
+
+    @Test
+    public void slidesAreFoundWithoutPresentationPart() throws IOException {
+        try (PptxReader reader = new PptxReader(writePackage(null, null))) {
+            assertEquals(2, reader.getSlideCount());
+            assertEquals(0, reader.getSlideWidth());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void missingPartIsAnIOException() throws IOException {
+        try (PptxReader reader = new PptxReader(writePackage(null, null))) {
+            reader.locate("ppt/media/image3.gif");
+        }
+    }
+
+    @Test
+    public void damagedLocalHeaderIsAnIOException() throws IOException {
+        File file = writePackage(null, null);
+        try (PptxReader reader = new PptxReader(file)) {
+            // The central directory is only read on the first locate, after the damage
+            long offset = indexOf(file, "ppt/media/image1.png".getBytes(StandardCharsets.UTF_8)) - 30;
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.seek(offset);
+                out.writeInt(0);
+            }
+            try {
+                reader.locate("ppt/media/image1.png");
+                fail("Damaged local header accepted");
+            } catch (IOException expected) {
+                // Bad local header
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void notAZipIsAnIOException() throws IOException {
+        File file = folder.newFile("broken.pptx");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes(100, 3));
+        }
+        new PptxReader(file).close();
+    }
+
+    private File writePackage(String comment, byte[] extra) throws IOException {
+        File file = folder.newFile();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+            if (comment != null) {
+                zip.setComment(comment);
+            }
+            putDeflated(zip, "ppt/slides/slide10.xml", "<p:sld/>".getBytes(StandardCharsets.UTF_8), null);
+            putStored(zip, "ppt/media/image1.png", PNG, extra);
+            putDeflated(zip, "ppt/slides/slide2.xml", "<p:sld/>".getBytes(StandardCharsets.UTF_8), null);
+            putDeflated(zip, "ppt/media/image2.jpeg", JPEG, extra);
+        }
+        return file;
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, byte[] data, byte[] extra) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setCrc(crc.getValue());
+        if (extra != null) {
+            entry.setExtra(extraField(extra));
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    private static void putDeflated(ZipOutputStream zip, String name, byte[] data, byte[] extra) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        if (extra != null) {
+            entry.setExtra(extraField(extra));
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    // An unknown extra block: header id, data size, data
+    private static byte[] extraField(byte[] data) {
+        ByteBuffer field = ByteBuffer.allocate(4 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        field.putShort((short) 0xcafe);
+        field.putShort((short) data.length);
+        field.put(data);
+        return field.array();
+    }
+
+    private static byte[] read(String path, SlideSource.EntryLocation location) throws IOException {
+        ByteBuffer buffer = SlideImage.read(path, location);
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    private static long indexOf(File file, byte[] pattern) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        throw new AssertionError("Not found");
+    }
+
+    // Patterned bytes that still compress, so deflated entries really are deflated
+    private static byte[] bytes(int length, int period) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % period * 31);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,321 @@
+package uz.doc.test.viewer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip and damaged-file handling of parsed slide packs.
+ */
+public class SlidePackTest {
+    private static final byte[] SOURCE_PICTURE = "source picture bytes".getBytes();
+    private static final byte[] COPIED_PICTURE = "copied picture bytes, deflated in the spill".getBytes();
+    private static final int SOURCE_PICTURE_OFFSET = 7;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File source;
+    private File spill;
+    private File packFile;
+    private Map<String, SlideSource.EntryLocation> locations;
+    private Map<String, SlideSource.EntryLocation> copiedPictures;
+
+    @Before
+    public void setUp() throws IOException {
+        // Stands in for the .pptx: a stored picture at a known offset
+        source = folder.newFile("deck.pptx");
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            out.write(new byte[SOURCE_PICTURE_OFFSET]);
+            out.write(SOURCE_PICTURE);
+            out.write(new byte[5]);
+        }
+        locations = new LinkedHashMap<>();
+        locations.put("ppt/media/image1.png", new SlideSource.EntryLocation(source, SOURCE_PICTURE_OFFSET,
+                SOURCE_PICTURE.length, SOURCE_PICTURE.length, false));
+
+        // A picture that can't be referenced in place, deflated like PptConverter's spill may hold
+        byte[] deflated = deflate(COPIED_PICTURE);
+        spill = folder.newFile("deck.pictures");
+        Files.write(spill.toPath(), deflated);
+        copiedPictures = new LinkedHashMap<>();
+        copiedPictures.put("pictures/0", new SlideSource.EntryLocation(spill, 0,
+                deflated.length, COPIED_PICTURE.length, true));
+
+        packFile = new File(folder.newFolder("slide_packs"), "fingerprint");
+    }
+
+    @Test
+    public void readsBackWhatWasSaved() throws IOException {
+        List<SlideSource.SlideContent> slides = sampleSlides();
+        SlidePack.save(packFile, source, 9144000, 6858000, slides, locations, copiedPictures);
+
+        SlidePack pack = SlidePack.load(packFile, source);
+        assertNotNull(pack);
+        assertEquals(9144000, pack.getSlideWidth());
+        assertEquals(6858000, pack.getSlideHeight());
+        assertEquals(slides.size(), pack.getSlideCount());
+        for (int i = 0; i < slides.size(); i++) {
+            assertSameSlide(slides.get(i), pack.readSlide(i));
+        }
+        assertFalse(new File(packFile.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void picturesAreReadFromSourceAndFromThePack() throws IOException {
+        SlidePack.save(packFile, source, 0, 0, sampleSlides(), locations, copiedPictures);
+        // The pack must not depend on the scratch file it copied from
+        assertTrue(spill.delete());
+
+        SlidePack pack = SlidePack.load(packFile, source);
+        assertNotNull(pack);
+        assertArrayEquals(SOURCE_PICTURE, bytes(SlideImage.read("ppt/media/image1.png",
+                pack.locate("ppt/media/image1.png"))));
+        SlideSource.EntryLocation copied = pack.locate("pictures/0");
+        assertEquals(packFile, copied.file);
+        assertArrayEquals(COPIED_PICTURE, bytes(SlideImage.read("pictures/0", copied)));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownPictureIsAnIOException() throws IOException {
+        SlidePack.save(packFile, source, 0, 0, sampleSlides(), locations, copiedPictures);
+        SlidePack.load(packFile, source).locate("ppt/media/missing.png");
+    }
+
+    @Test
+    public void missingPackReadsAsNull() {
+        assertNull(SlidePack.load(packFile, source));
+    }
+
+    @Test
+    public void changedSourceReadsAsNull() throws IOException {
+        SlidePack.save(packFile, source, 0, 0, sampleSlides(), locations, copiedPictures);
+        try (RandomAccessFile out = new RandomAccessFile(source, "rw")) {
+            out.setLength(source.length() + 1);
+        }
+        assertNull(SlidePack.load(packFile, source));
+    }
+
+    @Test
+    public void corruptHeaderReadsAsNull() throws IOException {
+        SlidePack.save(packFile, source, 0, 0, sampleSlides(), locations, copiedPictures);
+        try (RandomAccessFile out = new RandomAccessFile(packFile, "rw")) {
+            out.seek(4);
+            out.writeInt(99);
+        }
+        assertNull(SlidePack.load(packFile, source));
+    }
+
+    @Test
+    public void trimKeepsFilesStillBeingWritten() throws IOException {
+        File dir = packFile.getParentFile();
+        File otherSpill = new File(dir, "other.pictures");
+        File otherTmp = new File(dir, "other.tmp");
+        assertTrue(otherSpill.createNewFile());
+        assertTrue(otherTmp.createNewFile());
+        // Older than every pack, so they would go first if they were counted
+        assertTrue(otherSpill.setLastModified(0));
+        assertTrue(otherTmp.setLastModified(0));
+
+        for (int i = 0; i < 20; i++) {
+            SlidePack.save(new File(dir, "pack" + i), source, 0, 0, sampleSlides(),
+                    locations, copiedPictures);
+        }
+
+        assertTrue(otherSpill.exists());
+        assertTrue(otherTmp.exists());
+        File[] packs = dir.listFiles((parent, name) -> name.startsWith("pack"));
+        assertNotNull(packs);
+        assertEquals(16, packs.length);
+    }
+
+    @Test
+    public void truncatedPackNeverReadsAsComplete() throws IOException {
+        SlidePack.save(packFile, source, 0, 0, sampleSlides(), locations, copiedPictures);
+        byte[] complete = Files.readAllBytes(packFile.toPath());
+
+        // Records and pictures are read lazily, so a cut may only show when they are
+        for (int length = 0; length < complete.length; length++) {
+            try (RandomAccessFile out = new RandomAccessFile(packFile, "rw")) {
+                out.setLength(0);
+                out.write(complete, 0, length);
+            }
+            SlidePack pack = SlidePack.load(packFile, source);
+            assertFalse("Cut at " + length, pack != null && readsCompletely(pack));
+        }
+    }
+
+    private static boolean readsCompletely(SlidePack pack) {
+        try {
+            for (int i = 0; i < pack.getSlideCount(); i++) {
+                pack.readSlide(i);
+            }
+            SlideImage.read("pictures/0", pack.locate("pictures/0"));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static List<SlideSource.SlideContent> sampleSlides() {
+        SlideShape title = new SlideShape();
+        title.x = 457200;
+        title.y = 274638;
+        title.width = 8229600;
+        title.height = 1143000;
+        title.rotation = 5400000;
+        title.flipV = true;
+        title.geometry = SlideShape.GEOMETRY_ROUND_RECT;
+        title.fillColor = 0xFF4472C4;
+        title.lineColor = 0x80000000;
+        title.lineWidth = 12700;
+        title.textAnchor = SlideShape.ANCHOR_MIDDLE;
+        title.fontScale = 92500;
+        title.paragraphs.add(paragraph(SlideShape.ALIGN_CENTER, "Sarlavha — ", "birinchi"));
+
+        SlideShape picture = new SlideShape();
+        picture.kind = SlideShape.KIND_PICTURE;
+        picture.imagePath = "ppt/media/image1.png";
+        picture.width = 100;
+        picture.height = 200;
+        picture.cropLeft = 1000;
+        picture.cropTop = 2000;
+        picture.cropRight = 3000;
+        picture.cropBottom = 4000;
+        picture.flipH = true;
+
+        SlideShape table = new SlideShape();
+        table.kind = SlideShape.KIND_TABLE;
+        table.columnWidths = new int[]{100, 200};
+        table.rowHeights = new int[]{50};
+        SlideShape.Cell spanning = new SlideShape.Cell();
+        spanning.gridSpan = 2;
+        spanning.fillColor = 0xFFEEEEEE;
+        spanning.paragraphs.add(paragraph(SlideShape.ALIGN_LEFT, "katak"));
+        SlideShape.Cell covered = new SlideShape.Cell();
+        covered.merged = true;
+        table.cells.add(spanning);
+        table.cells.add(covered);
+
+        List<SlideSource.SlideContent> slides = new ArrayList<>();
+        slides.add(new SlideSource.SlideContent(1, "Sarlavha — birinchi", Arrays.asList("ppt/media/image1.png"),
+                Arrays.asList(title, picture, table), 0xFFFFFFFF));
+        slides.add(new SlideSource.SlideContent(2, "", Arrays.asList("pictures/0"),
+                Collections.emptyList(), 0xFF000000));
+        return slides;
+    }
+
+    private static SlideShape.Paragraph paragraph(int alignment, String... texts) {
+        SlideShape.Paragraph paragraph = new SlideShape.Paragraph();
+        paragraph.alignment = alignment;
+        for (int i = 0; i < texts.length; i++) {
+            SlideShape.Run run = new SlideShape.Run();
+            run.text = texts[i];
+            run.size = 2400 + i * 400;
+            run.color = 0xFF112233 + i;
+            run.bold = i == 0;
+            run.italic = i == 1;
+            run.underline = i == 1;
+            paragraph.runs.add(run);
+        }
+        return paragraph;
+    }
+
+    private static void assertSameSlide(SlideSource.SlideContent expected, SlideSource.SlideContent actual) {
+        assertEquals(expected.slideNumber, actual.slideNumber);
+        assertEquals(expected.text, actual.text);
+        assertEquals(expected.imagePaths, actual.imagePaths);
+        assertEquals(expected.backgroundColor, actual.backgroundColor);
+        assertEquals(expected.shapes.size(), actual.shapes.size());
+        for (int i = 0; i < expected.shapes.size(); i++) {
+            assertSameShape(expected.shapes.get(i), actual.shapes.get(i));
+        }
+    }
+
+    private static void assertSameShape(SlideShape expected, SlideShape actual) {
+        assertEquals(expected.kind, actual.kind);
+        assertEquals(expected.x, actual.x);
+        assertEquals(expected.y, actual.y);
+        assertEquals(expected.width, actual.width);
+        assertEquals(expected.height, actual.height);
+        assertEquals(expected.rotation, actual.rotation);
+        assertEquals(expected.flipH, actual.flipH);
+        assertEquals(expected.flipV, actual.flipV);
+        assertEquals(expected.geometry, actual.geometry);
+        assertEquals(expected.fillColor, actual.fillColor);
+        assertEquals(expected.lineColor, actual.lineColor);
+        assertEquals(expected.lineWidth, actual.lineWidth);
+        assertEquals(expected.textAnchor, actual.textAnchor);
+        assertEquals(expected.fontScale, actual.fontScale);
+        assertSameParagraphs(expected.paragraphs, actual.paragraphs);
+        assertEquals(expected.imagePath, actual.imagePath);
+        assertEquals(expected.cropLeft, actual.cropLeft);
+        assertEquals(expected.cropTop, actual.cropTop);
+        assertEquals(expected.cropRight, actual.cropRight);
+        assertEquals(expected.cropBottom, actual.cropBottom);
+        assertArrayEquals(expected.columnWidths, actual.columnWidths);
+        assertArrayEquals(expected.rowHeights, actual.rowHeights);
+        assertEquals(expected.cells.size(), actual.cells.size());
+        for (int i = 0; i < expected.cells.size(); i++) {
+            SlideShape.Cell expectedCell = expected.cells.get(i);
+            SlideShape.Cell actualCell = actual.cells.get(i);
+            assertEquals(expectedCell.gridSpan, actualCell.gridSpan);
+            assertEquals(expectedCell.merged, actualCell.merged);
+            assertEquals(expectedCell.fillColor, actualCell.fillColor);
+            assertSameParagraphs(expectedCell.paragraphs, actualCell.paragraphs);
+        }
+    }
+
+    private static void assertSameParagraphs(List<SlideShape.Paragraph> expected, List<SlideShape.Paragraph> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).alignment, actual.get(i).alignment);
+            List<SlideShape.Run> expectedRuns = expected.get(i).runs;
+            List<SlideShape.Run> actualRuns = actual.get(i).runs;
+            assertEquals(expectedRuns.size(), actualRuns.size());
+            for (int j = 0; j < expectedRuns.size(); j++) {
+                SlideShape.Run expectedRun = expectedRuns.get(j);
+                SlideShape.Run actualRun = actualRuns.get(j);
+                assertEquals(expectedRun.text, actualRun.text);
+                assertEquals(expectedRun.size, actualRun.size);
+                assertEquals(expectedRun.color, actualRun.color);
+                assertEquals(expectedRun.bold, actualRun.bold);
+                assertEquals(expectedRun.italic, actualRun.italic);
+                assertEquals(expectedRun.underline, actualRun.underline);
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}